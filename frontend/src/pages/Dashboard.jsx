@@ -103,9 +103,9 @@ function DocumentCard({ document, onOpen, onDelete, onRename }) {
               }}
             />
           </div>
-          {document.content ? (
+          {document.preview ? (
             <p className="relative text-xs text-zinc-400 line-clamp-5 text-left w-full leading-relaxed font-mono">
-              {truncateText(document.content, 150)}
+              {truncateText(document.preview, 150)}
             </p>
           ) : (
             <div className="relative flex flex-col items-center">
@@ -498,7 +498,7 @@ function Dashboard() {
 
     setIsRenaming(true);
     try {
-      await documentService.updateDocument(selectedDocument.id, {
+      await documentService.patchDocument(selectedDocument.id, {
         title: newDocTitle.trim(),
       });
       setDocuments((prev) =>
@@ -675,7 +675,7 @@ function Dashboard() {
                 </div>
                 <div>
                   <p className="text-3xl font-bold text-zinc-100 tracking-tight">
-                    {documents.filter((d) => d.content).length}
+                    {documents.filter((d) => d.preview).length}
                   </p>
                   <p className="text-xs font-medium text-zinc-500 mt-0.5">
                     With Content
@@ -705,7 +705,7 @@ function Dashboard() {
                 </div>
                 <div>
                   <p className="text-3xl font-bold text-zinc-100 tracking-tight">
-                    {documents.filter((d) => !d.content).length}
+                    {documents.filter((d) => !d.preview).length}
                   </p>
                   <p className="text-xs font-medium text-zinc-500 mt-0.5">
                     Empty Drafts
@@ -435,6 +435,101 @@ function ShareModal({ isOpen, onClose, documentId, permissions, onUpdate }) {
   );
 }
 
+/**
+ * Applies a broadcast operation (replace `length` characters at `cursorPosition`) to content
+ */
+function applyOperation(content, operation) {
+  const position = Math.min(operation.cursorPosition || 0, content.length);
+  return (
+    content.slice(0, position) +
+    (operation.changeContent || "") +
+    content.slice(position + (operation.length || 0))
+  );
+}
+
+function operationName(length, changeContent) {
+  if (length > 0 && changeContent) return "replace";
+  return length > 0 ? "delete" : "insert";
+}
+
+/**
+ * Smallest single replace turning current into target, or null when they are equal
+ */
+function diffOperation(current, target) {
+  if (current === target) return null;
+  const max = Math.min(current.length, target.length);
+  let prefix = 0;
+  while (prefix < max && current[prefix] === target[prefix]) prefix++;
+  let suffix = 0;
+  while (
+    suffix < max - prefix &&
+    current[current.length - 1 - suffix] === target[target.length - 1 - suffix]
+  ) {
+    suffix++;
+  }
+  const length = current.length - prefix - suffix;
+  const changeContent = target.slice(prefix, target.length - suffix);
+  return {
+    operation: operationName(length, changeContent),
+    cursorPosition: prefix,
+    length,
+    changeContent,
+  };
+}
+
+/**
+ * Rewrites operation to apply on top of a concurrent one that was applied first; the same rules
+ * as OperationalTransformService.transform, so the client and the server converge
+ */
+function transformOperation(operation, applied, operationWinsTies) {
+  const position = operation.cursorPosition;
+  const end = position + (operation.length || 0);
+  const inserted = operation.changeContent || "";
+  const appliedPosition = applied.cursorPosition;
+  const appliedEnd = appliedPosition + (applied.length || 0);
+  const appliedInserted = applied.changeContent || "";
+  const shift = appliedInserted.length - (applied.length || 0);
+
+  const result = { ...operation, length: operation.length || 0, changeContent: inserted };
+  const samePoint =
+    position === end && appliedPosition === appliedEnd && position === appliedPosition;
+  if (samePoint) {
+    if (!operationWinsTies) result.cursorPosition = position + appliedInserted.length;
+    return result;
+  }
+  if (!(position < appliedEnd && appliedPosition < end)) {
+    if (end > appliedPosition) result.cursorPosition = position + shift;
+    return result;
+  }
+  const operationFirst =
+    position < appliedPosition || (position === appliedPosition && operationWinsTies);
+  const unionStart = Math.min(position, appliedPosition);
+  const unionEnd = Math.max(end, appliedEnd);
+  if (!operationFirst) {
+    result.cursorPosition = appliedPosition + appliedInserted.length;
+    result.length = Math.max(0, unionEnd - appliedEnd);
+  } else if (end <= appliedEnd) {
+    result.cursorPosition = unionStart;
+    result.length = appliedPosition - unionStart;
+  } else {
+    result.cursorPosition = unionStart;
+    result.length = unionEnd + shift - unionStart;
+    result.changeContent = inserted + appliedInserted;
+  }
+  result.operation = operationName(result.length, result.changeContent);
+  return result;
+}
+
+/**
+ * Where a caret at index ends up once operation is applied
+ */
+function transformIndex(index, operation) {
+  const end = operation.cursorPosition + (operation.length || 0);
+  if (index <= operation.cursorPosition) return index;
+  if (index >= end) return index + (operation.changeContent || "").length - (operation.length || 0);
+  return operation.cursorPosition + (operation.changeContent || "").length;
+}
+
 /**
  * Document editor page component
  */
@@ -473,6 +568,21 @@ function DocumentEditor() {
   const editorRef = useRef(null);
   const autoSaveTimeoutRef = useRef(null);
   const lastContentRef = useRef("");
+  // last server revision folded into the content; null until the first catch-up arrived
+  const lastRevisionRef = useRef(null);
+  // content as the user sees it, including local edits the server has not acknowledged yet
+  const contentRef = useRef("");
+  // local edits in order, each on top of the previous; the first one is on its way when inFlightRef is set
+  const pendingRef = useRef([]);
+  const inFlightRef = useRef(false);
+  // updates that arrived before the first catch-up told us which revision the content is at, or
+  // while a catch-up for a gap in the revisions is on its way
+  const earlyUpdatesRef = useRef([]);
+  const catchingUpRef = useRef(false);
+  // set when the connection was (re)established: an edit in flight before then never arrived
+  const reconnectedRef = useRef(false);
+  const savedTitleRef = useRef("");
+  const selectionRef = useRef(null);
 
   /**
    * Checks if user has edit permission
@@ -507,6 +617,8 @@ function DocumentEditor() {
       setContent(doc.content || "");
       setTitle(doc.title || "");
       lastContentRef.current = doc.content || "";
+      contentRef.current = doc.content || "";
+      savedTitleRef.current = doc.title || "";
     } catch (err) {
       showError("Failed to load document");
       console.error("Error loading document:", err);
@@ -587,24 +699,29 @@ function DocumentEditor() {
   }, [documentId]);
 
   /**
-   * Saves document content
+   * Saves the title; content travels as edits over the websocket and is written back by the server
    */
   const saveDocument = useCallback(async () => {
     if (!hasUnsavedChanges) return;
 
     setIsSaving(true);
     try {
-      await documentService.updateDocument(documentId, { content, title });
-      setLastSaved(new Date());
-      setHasUnsavedChanges(false);
-      lastContentRef.current = content;
+      if (title !== savedTitleRef.current) {
+        await documentService.patchDocument(documentId, { title });
+        savedTitleRef.current = title;
+      }
+      if (pendingRef.current.length === 0) {
+        setLastSaved(new Date());
+        setHasUnsavedChanges(false);
+        lastContentRef.current = contentRef.current;
+      }
     } catch (err) {
       showError("Failed to save document");
       console.error("Error saving document:", err);
     } finally {
       setIsSaving(false);
     }
-  }, [documentId, content, title, hasUnsavedChanges, showError]);
+  }, [documentId, title, hasUnsavedChanges, showError]);
 
   /**
    * Auto-save effect
@@ -669,49 +786,160 @@ function DocumentEditor() {
     }
   }, [showComments, fetchComments]);
 
+  /**
+   * Sends the oldest local edit once the previous one was acknowledged
+   */
+  const sendPendingEdit = useCallback(() => {
+    if (
+      inFlightRef.current ||
+      pendingRef.current.length === 0 ||
+      lastRevisionRef.current === null ||
+      !websocketService.getConnectionStatus()
+    ) {
+      return;
+    }
+    inFlightRef.current = true;
+    websocketService.sendEdit(documentId, {
+      ...pendingRef.current[0],
+      baseRevision: lastRevisionRef.current,
+    });
+  }, [documentId]);
+
+  /**
+   * Folds one broadcast edit into the content: our own is an acknowledgement, anyone else's is
+   * transformed past the local edits the server has not seen yet and then applied
+   */
+  const receiveOperation = useCallback((message) => {
+    if (message.revision <= lastRevisionRef.current) return;
+    lastRevisionRef.current = message.revision;
+    const pending = pendingRef.current;
+    if (pending.length > 0 && message.clientEditId === pending[0].clientEditId) {
+      pending.shift();
+      inFlightRef.current = false;
+      return;
+    }
+    // the server accepted this one before ours, so it wins ties
+    let incoming = message;
+    for (let i = 0; i < pending.length; i++) {
+      const local = pending[i];
+      pending[i] = transformOperation(local, incoming, false);
+      incoming = transformOperation(incoming, local, true);
+    }
+    const editor = editorRef.current;
+    if (editor && window.document.activeElement === editor) {
+      selectionRef.current = [
+        transformIndex(editor.selectionStart, incoming),
+        transformIndex(editor.selectionEnd, incoming),
+      ];
+    }
+    contentRef.current = applyOperation(contentRef.current, incoming);
+    setContent(contentRef.current);
+  }, []);
+
+  /**
+   * Keeps the caret where it was when a remote edit changes the text around it
+   */
+  useEffect(() => {
+    const selection = selectionRef.current;
+    if (selection && editorRef.current) {
+      editorRef.current.setSelectionRange(selection[0], selection[1]);
+      selectionRef.current = null;
+    }
+  }, [content]);
+
   /**
    * WebSocket connection for real-time collaboration
    */
   useEffect(() => {
     if (!documentId || !user) return;
 
+    const requestCatchUp = () => {
+      catchingUpRef.current = true;
+      websocketService.requestCatchUp(
+        documentId,
+        lastRevisionRef.current === null ? -1 : lastRevisionRef.current
+      );
+    };
+
+    // Edits written over REST are broadcast outside the order of the ones sent here, so a
+    // revision can overtake the one before it: hold it back and fetch what is missing
+    const receiveUpdate = (message) => {
+      if (catchingUpRef.current) {
+        earlyUpdatesRef.current.push(message);
+        return;
+      }
+      if (message.revision > lastRevisionRef.current + 1) {
+        earlyUpdatesRef.current.push(message);
+        requestCatchUp();
+        return;
+      }
+      receiveOperation(message);
+    };
+
     const onConnect = () => {
       setIsConnected(true);
+      // updates are held back from here until the catch-up requested below is in
+      catchingUpRef.current = true;
+
+      // Missed edits come back as operations, or as the whole document when too far behind
+      websocketService.subscribeToCatchUp(documentId, (catchUp) => {
+        if (catchUp.content !== null && catchUp.content !== undefined) {
+          // a snapshot cannot be rebased onto, so unsent local edits give way to it
+          pendingRef.current = [];
+          inFlightRef.current = false;
+          contentRef.current = catchUp.content;
+          setContent(catchUp.content);
+          setTitle(catchUp.title || "");
+          savedTitleRef.current = catchUp.title || "";
+          lastRevisionRef.current = catchUp.revision;
+        } else {
+          (catchUp.operations || []).forEach(receiveOperation);
+        }
+        // whatever was in flight when the connection dropped and is not in the log never arrived
+        if (reconnectedRef.current) {
+          reconnectedRef.current = false;
+          inFlightRef.current = false;
+        }
+        catchingUpRef.current = false;
+        const held = earlyUpdatesRef.current.sort((a, b) => a.revision - b.revision);
+        earlyUpdatesRef.current = [];
+        held.forEach(receiveUpdate);
+        sendPendingEdit();
+      });
 
       // Subscribe to document edits
       websocketService.subscribeToDocumentUpdates(documentId, (message) => {
-        if (message.userId !== user.id) {
-          // Apply remote edit
-          setContent((prevContent) => {
-            // Simple merge - in production, use OT or CRDT
-            if (message.content !== undefined) {
-              return message.content;
-            }
-            return prevContent;
-          });
+        // the server fell too far behind on this connection and skipped edits: catch up instead
+        if (message.operation === "resync") {
+          if (!catchingUpRef.current) requestCatchUp();
+          return;
         }
+        receiveUpdate(message);
+        sendPendingEdit();
       });
 
-      // Subscribe to user presence
+      // Subscribe to user presence: the server sends a snapshot first, then join/leave diffs
       websocketService.subscribeToPresence(documentId, (message) => {
-        if (message.type === "join") {
+        if (message.action === "snapshot") {
+          setActiveUsers(
+            message.users.map((u) => ({ id: u.userId, name: u.userName }))
+          );
+        } else if (message.action === "join") {
           setActiveUsers((prev) => {
             if (!prev.find((u) => u.id === message.userId)) {
               return [...prev, { id: message.userId, name: message.userName }];
             }
             return prev;
           });
-        } else if (message.type === "leave") {
+        } else if (message.action === "leave") {
           setActiveUsers((prev) => prev.filter((u) => u.id !== message.userId));
         }
       });
 
-      // Announce presence
-      websocketService.sendPresence(documentId, {
-        type: "join",
-        userId: user.id,
-        userName: user.name,
-      });
+      // the first time the whole document at its current revision, after a dropped connection
+      // only what was broadcast meanwhile
+      reconnectedRef.current = true;
+      requestCatchUp();
     };
 
     const onError = (err) => {
@@ -734,35 +962,30 @@ function DocumentEditor() {
     return () => {
       // Cleanup WebSocket subscriptions
       try {
-        if (websocketService.getConnectionStatus()) {
-          websocketService.sendPresence(documentId, {
-            type: "leave",
-            userId: user.id,
-            userName: user.name,
-          });
-        }
         websocketService.unsubscribeFromDocument(documentId);
       } catch (err) {
         console.error("Error during WebSocket cleanup:", err);
       }
     };
-  }, [documentId, user]);
+  }, [documentId, user, receiveOperation, sendPendingEdit]);
 
   /**
    * Handles content change
    */
   const handleContentChange = (e) => {
     const newContent = e.target.value;
+    const operation = diffOperation(contentRef.current, newContent);
+    contentRef.current = newContent;
     setContent(newContent);
+    if (!operation) return;
     setHasUnsavedChanges(true);
 
-    // Send edit to collaborators
-    if (isConnected) {
-      websocketService.sendEdit(documentId, {
-        content: newContent,
-        userId: user?.id,
-      });
-    }
+    // queued until the server acknowledged the previous one, then sent to collaborators
+    pendingRef.current.push({
+      ...operation,
+      clientEditId: `${Date.now().toString(36)}-${Math.random().toString(36).slice(2, 10)}`,
+    });
+    sendPendingEdit();
   };
 
   /**
@@ -778,9 +1001,8 @@ function DocumentEditor() {
    */
   const handleRestoreVersion = async (version) => {
     try {
+      // the restored text reaches this editor like any other edit, through the updates topic
       await versionService.restoreVersion(version.id);
-      setContent(version.content);
-      setHasUnsavedChanges(true);
       showSuccess("Version restored");
       setShowVersionHistory(false);
     } catch (err) {
@@ -37,9 +37,9 @@ function SharedDocCard({ document, onOpen }) {
     >
       {/* Document preview */}
       <div className="h-28 bg-zinc-800/30 border-b border-zinc-800/50 p-4 flex items-center justify-center">
-        {document.content ? (
+        {document.preview ? (
           <p className="text-xs text-zinc-400 line-clamp-4 text-left w-full leading-relaxed">
-            {truncateText(document.content, 120)}
+            {truncateText(document.preview, 120)}
           </p>
         ) : (
           <div className="flex flex-col items-center text-zinc-600">
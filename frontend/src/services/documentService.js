@@ -6,12 +6,21 @@ import { API_ENDPOINTS } from "../utils/constants";
  */
 const documentService = {
   /**
-   * Retrieves all accessible documents for the current user
-   * @returns {Promise<Array>} Array of document objects
+   * Retrieves all accessible documents for the current user, following the
+   * server's keyset pages
+   * @returns {Promise<Array>} Array of document summaries (no content, only a preview)
    */
   async getAllDocuments() {
-    const response = await api.get(API_ENDPOINTS.DOCUMENTS.BASE);
-    return response.data;
+    const documents = [];
+    let cursor;
+    do {
+      const response = await api.get(API_ENDPOINTS.DOCUMENTS.BASE, {
+        params: { limit: 200, cursor },
+      });
+      documents.push(...response.data);
+      cursor = response.headers["x-next-cursor"];
+    } while (cursor);
+    return documents;
   },
 
   /**
@@ -59,6 +68,17 @@ const documentService = {
     return response.data;
   },
 
+  /**
+   * Changes only the given fields of a document, e.g. just the title for a rename
+   * @param {string|number} id - Document ID
+   * @param {Object} changes - Object containing title and/or content, or a single delta edit
+   * @returns {Promise<Object|undefined>} The applied edit for a delta, nothing otherwise
+   */
+  async patchDocument(id, changes) {
+    const response = await api.patch(API_ENDPOINTS.DOCUMENTS.BY_ID(id), changes);
+    return response.data;
+  },
+
   /**
    * Deletes a document
    * @param {string|number} id - Document ID
@@ -80,7 +100,7 @@ const documentService = {
     return documents.filter(
       (doc) =>
         doc.title?.toLowerCase().includes(lowerQuery) ||
-        doc.content?.toLowerCase().includes(lowerQuery)
+        doc.preview?.toLowerCase().includes(lowerQuery)
     );
   },
 
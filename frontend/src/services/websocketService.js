@@ -162,6 +162,20 @@ class WebSocketService {
     );
   }
 
+  /**
+   * Subscribes to answers of resync requests for a document
+   * @param {string|number} documentId - Document ID
+   * @param {Function} callback - Catch-up handler callback
+   * @returns {Object} Subscription object
+   */
+  subscribeToCatchUp(documentId, callback) {
+    return this.subscribe(WS_TOPICS.RESYNC, `resync-${documentId}`, (message) => {
+      if (String(message.documentId) === String(documentId)) {
+        callback(message);
+      }
+    });
+  }
+
   /**
    * Generic subscription method
    * @param {string} topic - Topic to subscribe to
@@ -213,6 +227,7 @@ class WebSocketService {
     this.unsubscribe(`updates-${documentId}`);
     this.unsubscribe(`cursors-${documentId}`);
     this.unsubscribe(`presence-${documentId}`);
+    this.unsubscribe(`resync-${documentId}`);
   }
 
   /**
@@ -225,21 +240,21 @@ class WebSocketService {
   }
 
   /**
-   * Sends a cursor position update
+   * Asks for the edits broadcast since the last revision seen (or the whole document if too far behind)
    * @param {string|number} documentId - Document ID
-   * @param {Object} cursorMessage - Cursor position payload
+   * @param {number|null} revision - Last revision received on the updates topic
    */
-  sendCursorPosition(documentId, cursorMessage) {
-    this.send(WS_DESTINATIONS.DOCUMENT_CURSOR(documentId), cursorMessage);
+  requestCatchUp(documentId, revision) {
+    this.send(WS_DESTINATIONS.DOCUMENT_RESYNC(documentId), { revision });
   }
 
   /**
-   * Sends a presence update (join/leave)
+   * Sends a cursor position update
    * @param {string|number} documentId - Document ID
-   * @param {Object} presenceMessage - Presence payload
+   * @param {Object} cursorMessage - Cursor position payload
    */
-  sendPresence(documentId, presenceMessage) {
-    this.send(WS_DESTINATIONS.DOCUMENT_PRESENCE(documentId), presenceMessage);
+  sendCursorPosition(documentId, cursorMessage) {
+    this.send(WS_DESTINATIONS.DOCUMENT_CURSOR(documentId), cursorMessage);
   }
 
   /**
@@ -47,13 +47,14 @@ export const WS_TOPICS = {
   DOCUMENT_UPDATES: (docId) => `/topic/document/${docId}/updates`,
   DOCUMENT_CURSORS: (docId) => `/topic/document/${docId}/cursors`,
   DOCUMENT_PRESENCE: (docId) => `/topic/document/${docId}/presence`,
+  RESYNC: "/user/queue/resync",
 };
 
 // WebSocket Destinations
 export const WS_DESTINATIONS = {
   DOCUMENT_EDIT: (docId) => `/app/document/${docId}/edit`,
   DOCUMENT_CURSOR: (docId) => `/app/document/${docId}/cursor`,
-  DOCUMENT_PRESENCE: (docId) => `/app/document/${docId}/presence`,
+  DOCUMENT_RESYNC: (docId) => `/app/document/${docId}/resync`,
 };
 
 // Access Types
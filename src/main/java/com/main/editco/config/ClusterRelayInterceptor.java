@@ -0,0 +1,84 @@
+package com.main.editco.config;
+
+import com.main.editco.service.ClusterFanout;
+import com.main.editco.service.DocumentTopics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.concurrent.TimeUnit;
+
+// Sits on the brokerChannel: document-topic broadcasts published on this node are handed to the
+// ClusterFanout, and broadcasts from other nodes are fed into the local broker with a marker so
+// they are not relayed again. Presence diffs stay on the node that sent them: PresenceRegistry shares
+// who is present itself and each node works out its own diffs. Without a fan-out bean
+// (collab.cluster.fanout=none) it does nothing.
+@Slf4j
+@Component
+public class ClusterRelayInterceptor implements ChannelInterceptor {
+    public static final String RELAYED_HEADER = "clusterRelayed";
+
+    @Autowired(required = false)
+    private ClusterFanout clusterFanout;
+    @Lazy
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer relayLatency;
+
+    @PostConstruct
+    public void init() {
+        relayLatency = meterRegistry.timer("coedit.cluster.relay.latency");
+        if (clusterFanout != null) {
+            clusterFanout.subscribe(this::deliver);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (clusterFanout == null || message.getHeaders().containsKey(RELAYED_HEADER)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (DocumentTopics.documentId(destination) != null
+                && !DocumentTopics.PRESENCE.equals(DocumentTopics.channel(destination))) {
+            Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+            clusterFanout.publish(new ClusterFanout.Envelope(clusterFanout.nodeId(), destination,
+                    contentType != null ? contentType.toString() : null, payload, System.currentTimeMillis()));
+        }
+        return message;
+    }
+
+    private void deliver(ClusterFanout.Envelope envelope) {
+        // the fan-out also carries cluster control messages, which are not for the broker
+        if (DocumentTopics.documentId(envelope.destination()) == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(envelope.destination());
+        if (envelope.contentType() != null) {
+            headers.setContentType(MimeTypeUtils.parseMimeType(envelope.contentType()));
+        }
+        headers.setHeader(RELAYED_HEADER, envelope.origin());
+        messagingTemplate.send(envelope.destination(), MessageBuilder.createMessage(envelope.payload(), headers.getMessageHeaders()));
+        relayLatency.record(System.currentTimeMillis() - envelope.sentAt(), TimeUnit.MILLISECONDS);
+        log.trace("Relayed broadcast to {} from node {}", envelope.destination(), envelope.origin());
+    }
+}
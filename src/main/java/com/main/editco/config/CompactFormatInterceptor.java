@@ -0,0 +1,124 @@
+package com.main.editco.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.main.editco.util.CompactCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Re-encodes outbound JSON frames as CompactCodec binary for sessions that sent "accept-format:
+// compact" on CONNECT over a transport that takes binary frames. Interned references rely on the
+// broker delivering each session's frames in order.
+@Slf4j
+@Component
+public class CompactFormatInterceptor implements ChannelInterceptor {
+    public static final String FORMAT_HEADER = "accept-format";
+    public static final String COMPACT = "compact";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${collab.compact.max-interned:1024}")
+    private int maxInterned;
+
+    private final Map<String, CompactCodec> sessions = new ConcurrentHashMap<>();
+    // a broadcast hands every subscriber the same payload array; parse it once, not per session
+    private final Cache<byte[], JsonNode> parsed = Caffeine.newBuilder().weakKeys().maximumSize(1024).build();
+
+    private Counter jsonBytes;
+    private Counter compactBytes;
+    private Timer encoding;
+
+    @PostConstruct
+    public void init() {
+        jsonBytes = Counter.builder("coedit.ws.compact.bytes").tag("format", "json").baseUnit("bytes")
+                .description("Size of outbound frames before compact encoding").register(meterRegistry);
+        compactBytes = Counter.builder("coedit.ws.compact.bytes").tag("format", "compact").baseUnit("bytes")
+                .description("Size of the same frames after compact encoding").register(meterRegistry);
+        encoding = meterRegistry.timer("coedit.ws.compact.encode");
+    }
+
+    @EventListener
+    public void handleConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (!COMPACT.equals(accessor.getFirstNativeHeader(FORMAT_HEADER))) {
+            return;
+        }
+        if (!TransportHandshakeInterceptor.has(accessor.getSessionAttributes(), TransportHandshakeInterceptor.BINARY_FRAMES)) {
+            log.debug("Session {} asked for compact frames over a text-only transport, using JSON", accessor.getSessionId());
+            return;
+        }
+        sessions.put(accessor.getSessionId(), new CompactCodec(maxInterned));
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getMessageType() != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] json)
+                || accessor.getContentType() == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(accessor.getContentType())) {
+            return message;
+        }
+        CompactCodec codec = sessions.get(accessor.getSessionId());
+        if (codec == null) {
+            return message;
+        }
+        long start = System.nanoTime();
+        byte[] compact;
+        try {
+            JsonNode tree = parsed.get(json, this::parse);
+            compact = Boolean.TRUE.equals(accessor.getHeader(CompactCodec.INLINE_HEADER))
+                    ? CompactCodec.encodeInline(tree) : codec.encode(tree);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Sending JSON to session {}, compact encoding failed: {}", accessor.getSessionId(), e.getMessage());
+            return message;
+        }
+        encoding.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        jsonBytes.increment(json.length);
+        compactBytes.increment(compact.length);
+
+        MessageHeaderAccessor headers = MessageHeaderAccessor.getMutableAccessor(message);
+        headers.setContentType(CompactCodec.MIME_TYPE);
+        return MessageBuilder.createMessage(compact, headers.getMessageHeaders());
+    }
+
+    private JsonNode parse(byte[] json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Outbound frame is not JSON", e);
+        }
+    }
+}
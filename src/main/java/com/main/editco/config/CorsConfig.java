@@ -27,7 +27,9 @@ public class CorsConfig {
                 "Authorization",
                 "Content-Type",
                 "X-Total-Count",
-                "X-Request-Id"
+                "X-Request-Id",
+                "X-Next-Cursor",
+                "Retry-After"
         ));
         config.setMaxAge(3600L);
         source.registerCorsConfiguration("/**", config);
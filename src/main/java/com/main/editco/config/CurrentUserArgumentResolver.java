@@ -0,0 +1,33 @@
+package com.main.editco.config;
+
+import com.main.editco.dto.CurrentUser;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+// Lets controller methods take a CurrentUser parameter instead of looking the user up by email
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return CurrentUser.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public CurrentUser resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                       NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        return from(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    static CurrentUser from(Object principal) {
+        if (principal instanceof Authentication authentication && authentication.getPrincipal() instanceof CurrentUser user) {
+            return user;
+        }
+        throw new AuthenticationCredentialsNotFoundException("No authenticated user");
+    }
+}
@@ -0,0 +1,22 @@
+package com.main.editco.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+// /actuator/lanes; kept apart from the executor, which Spring also registers as clientInboundChannelExecutor
+@Component
+@Endpoint(id = "lanes")
+public class DocumentLaneEndpoint {
+    @Autowired
+    private DocumentLaneExecutor documentLaneExecutor;
+
+    @ReadOperation
+    public List<Map<String, Object>> lanes() {
+        return documentLaneExecutor.lanes();
+    }
+}
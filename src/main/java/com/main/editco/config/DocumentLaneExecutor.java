@@ -0,0 +1,151 @@
+package com.main.editco.config;
+
+import com.main.editco.service.DocumentTopics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Executor for the clientInboundChannel that runs every frame for a document on one fixed
+// single-threaded lane, chosen from the document id. A document's edits are handled strictly in
+// arrival order while other documents proceed on the other lanes; frames that name no document
+// (CONNECT, user queues) are spread by session id. Queue depth per lane is a gauge, and the
+// documents with the most handled frames per lane in the last window are served by DocumentLaneEndpoint.
+@Slf4j
+@Component
+public class DocumentLaneExecutor implements TaskExecutor, DisposableBean {
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 0 means twice the cores, the size of Spring's default inbound pool
+    @Value("${collab.lanes.count:0}")
+    private int laneCount;
+    @Value("${collab.lanes.hot-window-ms:10000}")
+    private long hotWindowMs;
+    @Value("${collab.lanes.hot-documents:5}")
+    private int hotDocuments;
+
+    private Lane[] lanes;
+
+    @PostConstruct
+    public void init() {
+        // the broker configuration hands this component back as its clientInboundChannelExecutor
+        // bean, which runs the init callbacks a second time
+        if (lanes != null) {
+            return;
+        }
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors() * 2;
+        lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            Lane lane = new Lane(i);
+            lanes[i] = lane;
+            Gauge.builder("coedit.ws.lane.queue", lane.executor, executor -> executor.getQueue().size())
+                    .tag("lane", String.valueOf(i)).register(meterRegistry);
+        }
+        log.info("Handling inbound STOMP frames on {} document lanes", count);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Long documentId = null;
+        String sessionId = null;
+        if (task instanceof MessageHandlingRunnable handling) {
+            Message<?> message = handling.getMessage();
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            documentId = DocumentTopics.actionDocumentId(destination);
+            if (documentId == null) {
+                documentId = DocumentTopics.documentId(destination);
+            }
+            sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        }
+        int hash = documentId != null ? Long.hashCode(documentId) : sessionId != null ? sessionId.hashCode() : 0;
+        run(lanes[Math.floorMod(hash, lanes.length)], documentId, task);
+    }
+
+    // Runs work for a document that does not arrive as a frame (edits forwarded by another node) on
+    // the document's lane, in order with the frames for it
+    public void execute(Long documentId, Runnable task) {
+        run(lanes[Math.floorMod(Long.hashCode(documentId), lanes.length)], documentId, task);
+    }
+
+    private void run(Lane lane, Long documentId, Runnable task) {
+        lane.executor.execute(() -> {
+            if (documentId != null) {
+                lane.count(documentId);
+            }
+            task.run();
+        });
+    }
+
+    // per lane: queued frames and the hottest documents of the last closed window
+    public List<Map<String, Object>> lanes() {
+        List<Map<String, Object>> result = new ArrayList<>(lanes.length);
+        for (Lane lane : lanes) {
+            result.add(Map.of(
+                    "lane", lane.index,
+                    "queued", lane.executor.getQueue().size(),
+                    "windowEnd", lane.hot.windowEnd(),
+                    "hottest", lane.hot.documents()));
+        }
+        return result;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (Lane lane : lanes) {
+            lane.executor.shutdown();
+        }
+        for (Lane lane : lanes) {
+            lane.executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private record Hot(long windowEnd, List<Map<String, Object>> documents) {}
+
+    private final class Lane {
+        private final int index;
+        private final ThreadPoolExecutor executor;
+        // only touched on the lane's own thread; readers see the last closed window through hot
+        private final Map<Long, long[]> counts = new HashMap<>();
+        private long windowStart = System.currentTimeMillis();
+        private volatile Hot hot = new Hot(0, List.of());
+
+        private Lane(int index) {
+            this.index = index;
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    new CustomizableThreadFactory("coedit-lane-" + index + "-"));
+        }
+
+        private void count(Long documentId) {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= hotWindowMs) {
+                hot = new Hot(now, counts.entrySet().stream()
+                        .sorted(Comparator.comparingLong((Map.Entry<Long, long[]> entry) -> entry.getValue()[0]).reversed())
+                        .limit(hotDocuments)
+                        .map(entry -> Map.<String, Object>of("documentId", entry.getKey(), "handled", entry.getValue()[0]))
+                        .toList());
+                counts.clear();
+                windowStart = now;
+            }
+            counts.computeIfAbsent(documentId, id -> new long[1])[0]++;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.main.editco.config;
+
+import com.main.editco.service.DocumentTopics;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Broker subscription registry keyed directly by (document id, channel) for the exact
+// /topic/document/{id}/{channel} destinations. A broadcast is one map lookup returning a prebuilt,
+// read-only subscriber map; subscribe and unsubscribe copy the entry for that one topic only.
+// Everything else (/queue, /user, other topics, patterns) goes to the delegate. Document topics
+// are only ever published to exact destinations, so a pattern subscription never receives them.
+public class DocumentSubscriptionRegistry implements SubscriptionRegistry {
+    private static final MultiValueMap<String, String> NONE = CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>());
+
+    private final SubscriptionRegistry delegate;
+    private final Map<Topic, MultiValueMap<String, String>> topics = new ConcurrentHashMap<>();
+    // per session, the topic of each of its document subscriptions, for unsubscribe and disconnect
+    private final Map<String, Map<String, Topic>> sessions = new ConcurrentHashMap<>();
+
+    private record Topic(long documentId, String channel) {}
+
+    public DocumentSubscriptionRegistry(SubscriptionRegistry delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void registerSubscription(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        Topic topic = topic(accessor.getDestination());
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+        if (topic == null || sessionId == null || subscriptionId == null) {
+            delegate.registerSubscription(message);
+            return;
+        }
+        sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, topic);
+        topics.compute(topic, (key, subscribers) -> {
+            MultiValueMap<String, String> copy = copy(subscribers);
+            copy.add(sessionId, subscriptionId);
+            return CollectionUtils.unmodifiableMultiValueMap(copy);
+        });
+    }
+
+    @Override
+    public void unregisterSubscription(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String sessionId = accessor.getSessionId();
+        Map<String, Topic> subscriptions = sessionId == null ? null : sessions.get(sessionId);
+        Topic topic = subscriptions == null ? null : subscriptions.remove(accessor.getSubscriptionId());
+        if (topic == null) {
+            delegate.unregisterSubscription(message);
+            return;
+        }
+        remove(topic, sessionId, accessor.getSubscriptionId());
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, Topic> subscriptions = sessions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, topic) -> remove(topic, sessionId, subscriptionId));
+        }
+        delegate.unregisterAllSubscriptions(sessionId);
+    }
+
+    @Override
+    public MultiValueMap<String, String> findSubscriptions(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        Topic topic = topic(destination);
+        if (topic == null) {
+            return delegate.findSubscriptions(message);
+        }
+        return topics.getOrDefault(topic, NONE);
+    }
+
+    private void remove(Topic topic, String sessionId, String subscriptionId) {
+        topics.computeIfPresent(topic, (key, subscribers) -> {
+            MultiValueMap<String, String> copy = copy(subscribers);
+            List<String> ids = copy.get(sessionId);
+            if (ids != null) {
+                ids.remove(subscriptionId);
+                if (ids.isEmpty()) {
+                    copy.remove(sessionId);
+                }
+            }
+            return copy.isEmpty() ? null : CollectionUtils.unmodifiableMultiValueMap(copy);
+        });
+    }
+
+    private static MultiValueMap<String, String> copy(MultiValueMap<String, String> subscribers) {
+        LinkedMultiValueMap<String, String> copy = new LinkedMultiValueMap<>();
+        if (subscribers != null) {
+            subscribers.forEach((sessionId, ids) -> copy.put(sessionId, new ArrayList<>(ids)));
+        }
+        return copy;
+    }
+
+    private static Topic topic(String destination) {
+        Long documentId = DocumentTopics.documentId(destination);
+        return documentId == null ? null : new Topic(documentId, DocumentTopics.channel(destination));
+    }
+}
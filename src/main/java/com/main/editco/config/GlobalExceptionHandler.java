@@ -1,7 +1,11 @@
 package com.main.editco.config;
 
+import com.main.editco.service.PreconditionFailedException;
+import com.main.editco.service.RateLimitExceededException;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -27,6 +31,39 @@ public class GlobalExceptionHandler {
                 request.getDescription(false)
         );
     }
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleRateLimitExceeded(
+            RateLimitExceededException ex,
+            WebRequest request) {
+        ResponseEntity<Map<String, Object>> response = buildErrorResponse(
+                ex.getMessage(),
+                HttpStatus.TOO_MANY_REQUESTS,
+                request.getDescription(false)
+        );
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(response.getBody());
+    }
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<Map<String, Object>> handlePreconditionFailed(
+            PreconditionFailedException ex,
+            WebRequest request) {
+        return buildErrorResponse(
+                ex.getMessage(),
+                HttpStatus.PRECONDITION_FAILED,
+                request.getDescription(false)
+        );
+    }
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, Object>> handleOptimisticLockingFailure(
+            OptimisticLockingFailureException ex,
+            WebRequest request) {
+        return buildErrorResponse(
+                "The document was changed by someone else at the same time, reload it and try again",
+                HttpStatus.CONFLICT,
+                request.getDescription(false)
+        );
+    }
     @ExceptionHandler(UsernameNotFoundException.class)
     public ResponseEntity<Map<String, Object>> handleUsernameNotFound(
             UsernameNotFoundException ex,
@@ -0,0 +1,130 @@
+package com.main.editco.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.main.editco.service.DocumentTopics;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+// Per-session and per-document message/byte budgets for SEND frames to /app/document/**, checked on
+// the transport thread before a frame reaches the clientInboundChannel pool. Over budget, cursor and
+// presence frames are dropped (the next one supersedes them anyway) and edits are rejected with an
+// error on the sender's /user/queue/errors so the client can resync.
+@Slf4j
+@Component
+public class InboundFlowControlInterceptor implements ChannelInterceptor {
+    private static final long WINDOW_MS = 1000;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Lazy
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${collab.flow.session.messages-per-second:50}")
+    private long sessionMessages;
+    @Value("${collab.flow.session.bytes-per-second:65536}")
+    private long sessionBytes;
+    @Value("${collab.flow.document.messages-per-second:500}")
+    private long documentMessages;
+    @Value("${collab.flow.document.bytes-per-second:1048576}")
+    private long documentBytes;
+
+    // idle entries expire, so sessions that vanish without a DISCONNECT frame do not leak
+    private final Cache<String, Budget> sessions = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(5)).build();
+    private final Cache<Long, Budget> documents = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(5)).build();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+        if (StompCommand.DISCONNECT.equals(accessor.getCommand())) {
+            sessions.invalidate(accessor.getSessionId());
+            return message;
+        }
+        if (!StompCommand.SEND.equals(accessor.getCommand())) {
+            return message;
+        }
+        Long documentId = DocumentTopics.actionDocumentId(accessor.getDestination());
+        if (documentId == null) {
+            return message;
+        }
+        int size = message.getPayload() instanceof byte[] payload ? payload.length : 0;
+        long now = System.currentTimeMillis();
+        String scope;
+        if (!sessions.get(accessor.getSessionId(), id -> new Budget()).tryAcquire(now, size, sessionMessages, sessionBytes)) {
+            scope = "session";
+        } else if (!documents.get(documentId, id -> new Budget()).tryAcquire(now, size, documentMessages, documentBytes)) {
+            scope = "document";
+        } else {
+            return message;
+        }
+
+        String action = DocumentTopics.action(accessor.getDestination());
+        boolean edit = DocumentTopics.EDIT.equals(action);
+        meterRegistry.counter("coedit.ws.inbound.over-budget",
+                "scope", scope, "action", action, "outcome", edit ? "rejected" : "dropped").increment();
+        if (edit) {
+            log.debug("Rejecting edit from session {} on document {}: {} budget exhausted", accessor.getSessionId(), documentId, scope);
+            reject(accessor.getSessionId(), accessor.getUser(), scope);
+        }
+        return null;
+    }
+
+    private void reject(String sessionId, Principal user, String scope) {
+        if (user == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(user.getName(), "/queue/errors", Map.of(
+                "timestamp", Instant.now().toString(),
+                "error", "Too Many Requests",
+                "message", "Edit rejected, " + scope + " message budget exceeded"
+        ), headers.getMessageHeaders());
+    }
+
+    // Fixed one-second window of messages and bytes
+    private static final class Budget {
+        private long windowStart;
+        private long messages;
+        private long bytes;
+
+        synchronized boolean tryAcquire(long now, int size, long maxMessages, long maxBytes) {
+            if (now - windowStart >= WINDOW_MS) {
+                windowStart = now;
+                messages = 0;
+                bytes = 0;
+            }
+            if (messages + 1 > maxMessages || bytes + size > maxBytes) {
+                return false;
+            }
+            messages++;
+            bytes += size;
+            return true;
+        }
+    }
+}
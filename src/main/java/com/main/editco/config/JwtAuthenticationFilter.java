@@ -1,15 +1,12 @@
 package com.main.editco.config;
 
-import com.main.editco.service.CustomerUserDetailsService;
-import com.main.editco.service.JwtService;
+import com.main.editco.service.TokenAuthenticationService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -17,8 +14,7 @@ import java.io.IOException;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
-    @Autowired private JwtService jwtService;
-    @Autowired private CustomerUserDetailsService userDetailsService;
+    @Autowired private TokenAuthenticationService tokenAuthenticationService;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -31,17 +27,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         try {
             String token = authHeader.substring(7);
-            String email = jwtService.extractEmail(token);
-            if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(email);
-                if (jwtService.validateToken(token, email)) {
-                    UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(
-                                    userDetails, null,
-                                    userDetails.getAuthorities()
-                            );
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                }
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                tokenAuthenticationService.authenticate(token)
+                        .ifPresent(SecurityContextHolder.getContext()::setAuthentication);
             }
         } catch (Exception e) {
             logger.error("JT Authentication failed: " + e.getMessage());
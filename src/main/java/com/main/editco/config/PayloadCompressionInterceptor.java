@@ -0,0 +1,156 @@
+package com.main.editco.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+// Deflates large outbound payloads for sessions that sent "accept-encoding: deflate" on CONNECT.
+// Only frames at least min-bytes long on the configured destinations are compressed, so cursor
+// batches and other small frames go out as they are. Sessions whose transport already negotiated
+// permessage-deflate, and text-only SockJS transports, are left alone.
+// A compressed frame is sent as application/octet-stream with "content-encoding: deflate" (zlib)
+// and a format parameter naming what is inside (json, or cbor for compact sessions).
+@Slf4j
+@Component
+public class PayloadCompressionInterceptor implements ChannelInterceptor {
+    public static final String ENCODING_HEADER = "accept-encoding";
+    public static final String CONTENT_ENCODING_HEADER = "content-encoding";
+    public static final String DEFLATE = "deflate";
+    private static final MimeType DEFLATED_JSON = new MimeType("application", "octet-stream", Map.of("format", "json"));
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${collab.compression.min-bytes:1024}")
+    private int minBytes;
+    @Value("${collab.compression.level:1}")
+    private int level;
+    @Value("${collab.compression.destinations:/topic/document/*/updates,/user/queue/**}")
+    private List<String> destinations;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    // broadcasts share one payload array across subscribers; deflate it once
+    private final Cache<byte[], byte[]> compressed = Caffeine.newBuilder().weakKeys().maximumSize(256).build();
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+
+    private Counter bytesBefore;
+    private Counter bytesAfter;
+    private Timer compression;
+
+    @PostConstruct
+    public void init() {
+        bytesBefore = Counter.builder("coedit.ws.compression.bytes").tag("stage", "before").baseUnit("bytes")
+                .description("Outbound payload bytes selected for compression").register(meterRegistry);
+        bytesAfter = Counter.builder("coedit.ws.compression.bytes").tag("stage", "after").baseUnit("bytes")
+                .description("The same payloads after compression").register(meterRegistry);
+        compression = Timer.builder("coedit.ws.compression")
+                .description("CPU time spent deflating one outbound payload").register(meterRegistry);
+    }
+
+    @EventListener
+    public void handleConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String accepted = accessor.getFirstNativeHeader(ENCODING_HEADER);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (accepted != null && accepted.contains(DEFLATE)
+                && TransportHandshakeInterceptor.has(attributes, TransportHandshakeInterceptor.BINARY_FRAMES)
+                && !TransportHandshakeInterceptor.has(attributes, TransportHandshakeInterceptor.TRANSPORT_DEFLATE)) {
+            sessions.add(accessor.getSessionId());
+        }
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getMessageType() != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] payload) || payload.length < minBytes
+                || !sessions.contains(accessor.getSessionId()) || !selected(accessor.getDestination())) {
+            return message;
+        }
+        MimeType contentType = accessor.getContentType();
+        boolean json = contentType != null && MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType);
+        boolean binary = contentType != null && MimeTypeUtils.APPLICATION_OCTET_STREAM.isCompatibleWith(contentType);
+        if (!json && !binary) {
+            return message;
+        }
+
+        byte[] deflated = compressed.get(payload, this::deflate);
+        if (deflated.length >= payload.length) {
+            return message;
+        }
+        MessageHeaderAccessor headers = MessageHeaderAccessor.getMutableAccessor(message);
+        if (json) {
+            headers.setContentType(DEFLATED_JSON);
+        }
+        if (headers instanceof NativeMessageHeaderAccessor nativeHeaders) {
+            nativeHeaders.setNativeHeader(CONTENT_ENCODING_HEADER, DEFLATE);
+        }
+        return MessageBuilder.createMessage(deflated, headers.getMessageHeaders());
+    }
+
+    private boolean selected(String destination) {
+        if (destination == null) {
+            return false;
+        }
+        for (String pattern : destinations) {
+            if (pathMatcher.match(pattern, destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private byte[] deflate(byte[] payload) {
+        long start = System.nanoTime();
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4 + 64);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        byte[] deflated = out.toByteArray();
+        compression.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        bytesBefore.increment(payload.length);
+        bytesAfter.increment(deflated.length);
+        return deflated;
+    }
+}
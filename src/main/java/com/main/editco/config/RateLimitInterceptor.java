@@ -0,0 +1,33 @@
+package com.main.editco.config;
+
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.service.RateLimitingService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.Set;
+
+// Applies the rest-write policy to every state-changing API call; reads are not limited
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+    @Autowired
+    private RateLimitingService rateLimitingService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (WRITE_METHODS.contains(request.getMethod())) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            String user = authentication != null && authentication.getPrincipal() instanceof CurrentUser currentUser
+                    ? String.valueOf(currentUser.id()) : null;
+            rateLimitingService.check(RateLimitingService.REST_WRITE, user, request.getRemoteAddr());
+        }
+        return true;
+    }
+}
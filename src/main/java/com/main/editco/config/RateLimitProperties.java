@@ -0,0 +1,32 @@
+package com.main.editco.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// rate-limit.policies.<name>.capacity / .period / .key, see application.properties
+@Data
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+    // per policy; the least recently used buckets are dropped beyond this
+    private long maxKeys = 100_000;
+    private Map<String, Policy> policies = new HashMap<>();
+
+    @Data
+    public static class Policy {
+        private long capacity;
+        private Duration period = Duration.ofMinutes(1);
+        private KeyType key = KeyType.USER;
+    }
+
+    public enum KeyType {
+        USER,
+        IP,
+        USER_AND_IP
+    }
+}
@@ -0,0 +1,107 @@
+package com.main.editco.config;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// STOMP encoder that encodes a broadcast's shared part once. The broker hands every subscriber the
+// same payload array, and MESSAGE frames to different subscribers differ only in the subscription
+// and message-id headers. The tail (shared headers, content-length, body) is encoded on first use
+// and cached by payload identity; each subscriber then only writes its own two headers and copies.
+public class SharedFrameStompEncoder extends StompEncoder {
+    // below this, re-encoding is as cheap as the lookup
+    private static final int MIN_SHARED_BYTES = 256;
+    // key StompHeaderAccessor.getCommand reads the command from (the constant itself is private)
+    private static final String COMMAND_HEADER = "stompCommand";
+    private static final byte[] COMMAND = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUBSCRIPTION = "subscription:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE_ID = "message-id:".getBytes(StandardCharsets.UTF_8);
+    private static final int SLOTS = 64;
+
+    // recent broadcasts by payload identity; a slot is overwritten by the next payload hashing to it
+    private final AtomicReferenceArray<Tail> tails = new AtomicReferenceArray<>(SLOTS);
+
+    // the frame as the base encoder wrote it for the shared headers; everything after the command is reused
+    private record Tail(byte[] payload, Map<String, List<String>> headers, byte[] frame) {}
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (payload.length < MIN_SHARED_BYTES || !StompCommand.MESSAGE.equals(StompHeaderAccessor.getCommand(headers))
+                || !(headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS) instanceof Map<?, ?> nativeHeaders)) {
+            return super.encode(headers, payload);
+        }
+        byte[] subscription = plainValue(((Map<String, List<String>>) nativeHeaders).get(StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER));
+        byte[] messageId = plainValue(((Map<String, List<String>>) nativeHeaders).get(StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER));
+        if (subscription == null || messageId == null) {
+            return super.encode(headers, payload);
+        }
+        int slot = System.identityHashCode(payload) & (SLOTS - 1);
+        Tail tail = tails.get(slot);
+        if (tail == null || tail.payload() != payload || !sameShared(tail.headers(), (Map<String, List<String>>) nativeHeaders)) {
+            tail = encodeTail((Map<String, List<String>>) nativeHeaders, payload);
+            tails.set(slot, tail);
+        }
+
+        int tailLength = tail.frame().length - COMMAND.length;
+        byte[] frame = new byte[COMMAND.length + SUBSCRIPTION.length + subscription.length + 1
+                + MESSAGE_ID.length + messageId.length + 1 + tailLength];
+        int at = put(frame, 0, COMMAND);
+        at = put(frame, at, SUBSCRIPTION);
+        at = put(frame, at, subscription);
+        frame[at++] = '\n';
+        at = put(frame, at, MESSAGE_ID);
+        at = put(frame, at, messageId);
+        frame[at++] = '\n';
+        System.arraycopy(tail.frame(), COMMAND.length, frame, at, tailLength);
+        return frame;
+    }
+
+    private Tail encodeTail(Map<String, List<String>> nativeHeaders, byte[] payload) {
+        Map<String, List<String>> shared = new LinkedHashMap<>(nativeHeaders);
+        shared.remove(StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER);
+        shared.remove(StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER);
+        return new Tail(payload, shared, super.encode(Map.of(COMMAND_HEADER, StompCommand.MESSAGE,
+                NativeMessageHeaderAccessor.NATIVE_HEADERS, shared), payload));
+    }
+
+    // the subscriber's headers minus its two own ones, compared without copying
+    private static boolean sameShared(Map<String, List<String>> shared, Map<String, List<String>> nativeHeaders) {
+        if (nativeHeaders.size() != shared.size() + 2) {
+            return false;
+        }
+        for (Map.Entry<String, List<String>> header : shared.entrySet()) {
+            if (!header.getValue().equals(nativeHeaders.get(header.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a single-valued header needing no STOMP escaping, as broker-generated ids are
+    private static byte[] plainValue(List<String> values) {
+        if (values == null || values.size() != 1) {
+            return null;
+        }
+        String value = values.get(0);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == ':' || c == '\n' || c == '\r' || c > 0x7f) {
+                return null;
+            }
+        }
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static int put(byte[] frame, int at, byte[] bytes) {
+        System.arraycopy(bytes, 0, frame, at, bytes.length);
+        return at + bytes.length;
+    }
+}
@@ -0,0 +1,191 @@
+package com.main.editco.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.service.DocumentTopics;
+import com.main.editco.service.PresenceRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps one slow subscriber from piling up an unbounded backlog. Every session's writes go through
+// a send buffer we can inspect; while it is over the lag threshold, cursor batches and presence
+// diffs to that session are dropped (the next batch or a fresh snapshot supersedes them). Past the
+// resync threshold, the next edit for a document is replaced by a "resync" marker and further edits
+// are dropped until the buffer drains; the client then reloads the live document instead of
+// replaying the backlog. Sessions that stay over the send limits are closed as before.
+@Slf4j
+@Component
+public class SlowConsumerGuard implements ChannelInterceptor {
+    // operation of the DocumentEditMessage that tells a client to reload the document
+    public static final String RESYNC = "resync";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Lazy
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Value("${collab.ws.send-time-limit-ms:10000}")
+    private int sendTimeLimit;
+    @Value("${collab.ws.send-buffer-bytes:524288}")
+    private int sendBufferLimit;
+    @Value("${collab.ws.lag.buffer-bytes:65536}")
+    private int lagBytes;
+    @Value("${collab.ws.lag.send-ms:1000}")
+    private long lagMs;
+    @Value("${collab.ws.resync.buffer-bytes:262144}")
+    private int resyncBytes;
+    @Value("${collab.ws.resync.send-ms:4000}")
+    private long resyncMs;
+
+    private final Map<String, Tracked> sessions = new ConcurrentHashMap<>();
+
+    private Counter resyncs;
+
+    // Frames may be checked from the broker and from direct sends at once, hence the concurrent sets
+    private record Tracked(ConcurrentWebSocketSessionDecorator session, Set<Long> resyncing,
+                           Map<Long, String> missedPresence) {}
+
+    @PostConstruct
+    public void init() {
+        resyncs = meterRegistry.counter("coedit.ws.outbound.resyncs");
+        Gauge.builder("coedit.ws.outbound.lagging", sessions,
+                all -> all.values().stream().filter(tracked -> lagging(tracked.session())).count())
+                .tag("state", "lagging").register(meterRegistry);
+        Gauge.builder("coedit.ws.outbound.lagging", sessions,
+                all -> all.values().stream().filter(tracked -> !tracked.resyncing().isEmpty()).count())
+                .tag("state", "resync").register(meterRegistry);
+    }
+
+    public int getSendTimeLimit() {
+        return sendTimeLimit;
+    }
+
+    public int getSendBufferLimit() {
+        return sendBufferLimit;
+    }
+
+    // SubProtocolWebSocketHandler writes every frame through the session decorator it creates, and
+    // that decorator holds the backlog; measuring any other wrapper would only ever see one frame
+    public SubProtocolWebSocketHandler subProtocolWebSocketHandler(MessageChannel clientInboundChannel,
+                                                                   SubscribableChannel clientOutboundChannel) {
+        return new SubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel) {
+            @Override
+            protected WebSocketSession decorateSession(WebSocketSession session) {
+                ConcurrentWebSocketSessionDecorator buffered =
+                        new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, sendBufferLimit);
+                sessions.put(session.getId(), new Tracked(buffered, ConcurrentHashMap.newKeySet(), new ConcurrentHashMap<>()));
+                return buffered;
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        Tracked tracked = sessionId == null ? null : sessions.get(sessionId);
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        Long documentId = DocumentTopics.documentId(destination);
+        if (tracked == null || documentId == null) {
+            return message;
+        }
+        if (!lagging(tracked.session())) {
+            if (!tracked.resyncing().isEmpty() || !tracked.missedPresence().isEmpty()) {
+                recovered(sessionId, tracked);
+            }
+            return message;
+        }
+
+        String topic = DocumentTopics.channel(destination);
+        if (DocumentTopics.UPDATES.equals(topic)) {
+            if (tracked.resyncing().contains(documentId)) {
+                return dropped(topic);
+            }
+            if (resync(tracked.session())) {
+                tracked.resyncing().add(documentId);
+                resyncs.increment();
+                log.info("Session {} is {} bytes behind on document {}, sending resync", sessionId,
+                        tracked.session().getBufferSize(), documentId);
+                return resyncMarker(message, documentId);
+            }
+            return message;
+        }
+        if (DocumentTopics.PRESENCE.equals(topic)) {
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+            if (subscriptionId != null) {
+                tracked.missedPresence().put(documentId, subscriptionId);
+            }
+        }
+        return dropped(topic);
+    }
+
+    // Edits flow again; presence diffs that were dropped are made up for with a fresh snapshot
+    private void recovered(String sessionId, Tracked tracked) {
+        tracked.resyncing().clear();
+        for (Long documentId : Set.copyOf(tracked.missedPresence().keySet())) {
+            String subscriptionId = tracked.missedPresence().remove(documentId);
+            if (subscriptionId != null) {
+                presenceRegistry.resendSnapshot(documentId, sessionId, subscriptionId);
+            }
+        }
+    }
+
+    private Message<?> resyncMarker(Message<?> message, Long documentId) {
+        DocumentEditMessage marker = new DocumentEditMessage();
+        marker.setDocumentId(documentId);
+        marker.setOperation(RESYNC);
+        marker.setTimestamp(System.currentTimeMillis());
+        try {
+            return MessageBuilder.createMessage(objectMapper.writeValueAsBytes(marker), message.getHeaders());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode resync marker", e);
+        }
+    }
+
+    private Message<?> dropped(String topic) {
+        meterRegistry.counter("coedit.ws.outbound.dropped", "channel", topic).increment();
+        return null;
+    }
+
+    private boolean lagging(ConcurrentWebSocketSessionDecorator session) {
+        return session.getBufferSize() > lagBytes || session.getTimeSinceSendStarted() > lagMs;
+    }
+
+    private boolean resync(ConcurrentWebSocketSessionDecorator session) {
+        return session.getBufferSize() > resyncBytes || session.getTimeSinceSendStarted() > resyncMs;
+    }
+}
@@ -0,0 +1,39 @@
+package com.main.editco.config;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
+
+// Records what the transport can carry in the session attributes, for the outbound encoders.
+// Only the native endpoint (/ws/websocket) takes binary frames; SockJS transports are text-only.
+// Tomcat negotiates permessage-deflate itself whenever a native client offers it.
+@Component
+public class TransportHandshakeInterceptor implements HandshakeInterceptor {
+    public static final String BINARY_FRAMES = "binaryFrames";
+    public static final String TRANSPORT_DEFLATE = "transportDeflate";
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        boolean nativeWebSocket = request.getURI().getPath().endsWith("/ws/websocket");
+        List<String> extensions = request.getHeaders().get("Sec-WebSocket-Extensions");
+        attributes.put(BINARY_FRAMES, nativeWebSocket);
+        attributes.put(TRANSPORT_DEFLATE, nativeWebSocket && extensions != null
+                && extensions.stream().anyMatch(extension -> extension.contains("permessage-deflate")));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    static boolean has(Map<String, Object> sessionAttributes, String attribute) {
+        return sessionAttributes != null && Boolean.TRUE.equals(sessionAttributes.get(attribute));
+    }
+}
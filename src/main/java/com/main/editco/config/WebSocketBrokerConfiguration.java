@@ -0,0 +1,27 @@
+package com.main.editco.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+// What @EnableWebSocketMessageBroker imports, applying every WebSocketMessageBrokerConfigurer, except
+// that the STOMP handler is the one SlowConsumerGuard creates, so it sees each session's real send buffer
+@Configuration(proxyBeanMethods = false)
+public class WebSocketBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+    @Autowired
+    private SlowConsumerGuard slowConsumerGuard;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                        AbstractSubscribableChannel clientOutboundChannel) {
+        SubProtocolWebSocketHandler handler =
+                slowConsumerGuard.subProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel);
+        handler.setPhase(getPhase());
+        return handler;
+    }
+}
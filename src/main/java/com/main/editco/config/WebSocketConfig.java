@@ -1,24 +1,133 @@
 package com.main.editco.config;
 
+import com.main.editco.util.CompactCodec;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.List;
 
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    @Autowired
+    private InboundFlowControlInterceptor inboundFlowControlInterceptor;
+    @Autowired
+    private DocumentLaneExecutor documentLaneExecutor;
+    @Autowired
+    private CompactFormatInterceptor compactFormatInterceptor;
+    @Autowired
+    private PayloadCompressionInterceptor payloadCompressionInterceptor;
+    @Autowired
+    private SlowConsumerGuard slowConsumerGuard;
+    @Autowired
+    private ClusterRelayInterceptor clusterRelayInterceptor;
+    @Autowired
+    private TransportHandshakeInterceptor transportHandshakeInterceptor;
+    @Lazy
+    @Autowired
+    @Qualifier("messageBrokerTaskScheduler")
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Value("${collab.ws.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    // The broker closes sessions that miss client heartbeats, which is what clears presence for
+    // tabs that crashed or lost the network without sending DISCONNECT
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        config.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                .setTaskScheduler(messageBrokerTaskScheduler);
+        // each session sees broker frames in publish order; compact references depend on it
+        config.setPreservePublishOrder(true);
         config.setApplicationDestinationPrefixes("/app");
+        // broadcasts published here also go to the other nodes
+        config.configureBrokerChannel().interceptors(clusterRelayInterceptor);
+    }
+
+    // The broker keeps its default registry for /queue and /user; document topics are indexed by id
+    @Bean
+    public static BeanPostProcessor documentSubscriptionRegistryInstaller() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler broker
+                        && !(broker.getSubscriptionRegistry() instanceof DocumentSubscriptionRegistry)) {
+                    broker.setSubscriptionRegistry(new DocumentSubscriptionRegistry(broker.getSubscriptionRegistry()));
+                }
+                return bean;
+            }
+        };
+    }
+
+    // The STOMP handler is created inside the endpoint registry, so its encoder is swapped once all
+    // beans exist and before the server starts accepting connections
+    @Bean
+    public SmartInitializingSingleton sharedFrameEncoderInstaller(
+            @Qualifier("subProtocolWebSocketHandler") WebSocketHandler subProtocolWebSocketHandler) {
+        return () -> {
+            if (subProtocolWebSocketHandler instanceof SubProtocolWebSocketHandler handler) {
+                handler.getProtocolHandlers().stream()
+                        .filter(StompSubProtocolHandler.class::isInstance)
+                        .forEach(stomp -> ((StompSubProtocolHandler) stomp).setEncoder(new SharedFrameStompEncoder()));
+            }
+        };
+    }
+
+    // runs after the authentication interceptor in WebSocketSecurityConfig; frames are then handled
+    // on their document's lane
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(inboundFlowControlInterceptor).executor(documentLaneExecutor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // frames for lagging sessions are dropped before anything is spent encoding them; compact
+        // encoding comes before compression, so compression sees the final body
+        registration.interceptors(slowConsumerGuard, compactFormatInterceptor, payloadCompressionInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(slowConsumerGuard.getSendTimeLimit())
+                .setSendBufferSizeLimit(slowConsumerGuard.getSendBufferLimit());
+    }
+
+    // Decodes SEND frames from compact clients; strict matching keeps it off JSON frames
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        MappingJackson2MessageConverter compact = new MappingJackson2MessageConverter(CompactCodec.MIME_TYPE);
+        compact.setObjectMapper(CompactCodec.mapper());
+        compact.setStrictContentTypeMatch(true);
+        messageConverters.add(compact);
+        return true;
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        // frames of one session are handled in the order they arrived, so the latest cursor wins
+        registry.setPreserveReceiveOrder(true);
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
+                .addInterceptors(transportHandshakeInterceptor)
                 .withSockJS();
     }
 }
@@ -0,0 +1,62 @@
+package com.main.editco.config;
+
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.service.DocumentAffinityRouter;
+import com.main.editco.service.DocumentSessionService;
+import com.main.editco.service.DocumentTopics;
+import com.main.editco.service.PermissionCheckService;
+import com.main.editco.service.PresenceRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+@Component
+public class WebSocketEventListener {
+    @Autowired
+    private DocumentSessionService documentSessionService;
+    @Autowired
+    private DocumentAffinityRouter documentAffinityRouter;
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+    @Autowired
+    private PermissionCheckService permissionCheckService;
+
+    // Inbound frames keep their order, so this event can fire before WebSocketSecurityConfig got to
+    // reject the SUBSCRIBE on the document's lane: only readers of the document join its session or presence
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        Long documentId = DocumentTopics.documentId(destination);
+        if (documentId == null
+                || !(event.getUser() instanceof Authentication authentication)
+                || !(authentication.getPrincipal() instanceof CurrentUser user)
+                || !permissionCheckService.canView(user.id(), documentId)) {
+            return;
+        }
+        if (DocumentTopics.UPDATES.equals(DocumentTopics.channel(destination))) {
+            documentAffinityRouter.join(documentId, accessor.getSessionId(), accessor.getSubscriptionId());
+        }
+        if (DocumentTopics.PRESENCE.equals(DocumentTopics.channel(destination))) {
+            presenceRegistry.join(documentId, accessor.getSessionId(), accessor.getSubscriptionId(), user);
+        }
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        documentSessionService.unsubscribe(accessor.getSessionId(), accessor.getSubscriptionId());
+        presenceRegistry.leave(accessor.getSessionId(), accessor.getSubscriptionId());
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        documentSessionService.disconnect(event.getSessionId());
+        presenceRegistry.disconnect(event.getSessionId());
+    }
+}
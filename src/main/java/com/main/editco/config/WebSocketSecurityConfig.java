@@ -1,28 +1,36 @@
 package com.main.editco.config;
 
-import com.main.editco.service.JwtService;
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.service.DocumentTopics;
+import com.main.editco.service.PermissionCheckService;
+import com.main.editco.service.TokenAuthenticationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodParameter;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.handler.invocation.HandlerMethodArgumentResolver;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.util.List;
+
 @Configuration
-@EnableWebSocketMessageBroker
 @Order(Ordered.HIGHEST_PRECEDENCE + 99)
 public class WebSocketSecurityConfig implements WebSocketMessageBrokerConfigurer {
     @Autowired
-    private JwtService jwtService;
+    private TokenAuthenticationService tokenAuthenticationService;
+    @Autowired
+    private PermissionCheckService permissionCheckService;
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
@@ -34,20 +42,37 @@ public class WebSocketSecurityConfig implements WebSocketMessageBrokerConfigurer
                     String authToken = accessor.getFirstNativeHeader("Authorization");
                     if (authToken != null && authToken.startsWith("Bearer ")) {
                         String token = authToken.substring(7);
-                        try {
-                            String email = jwtService.extractEmail(token);
-                            if (jwtService.validateToken(token, email)) {
-                                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(email, null,null);
-                                SecurityContextHolder.getContext().setAuthentication(authentication);
-                                accessor.setUser(authentication);
-                            }
-                        } catch (Exception e) {
-                            System.err.println(e.getMessage());
-                        }
+                        tokenAuthenticationService.authenticate(token).ifPresent(authentication -> {
+                            SecurityContextHolder.getContext().setAuthentication(authentication);
+                            accessor.setUser(authentication);
+                        });
+                    }
+                }
+                // a rejected SUBSCRIBE never reaches the broker, so no document topic is delivered to non-readers
+                if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+                    Long documentId = DocumentTopics.documentId(accessor.getDestination());
+                    if (documentId != null && !permissionCheckService.canView(
+                            CurrentUserArgumentResolver.from(accessor.getUser()).id(), documentId)) {
+                        throw new AccessDeniedException("You don't have the permission to view this document.");
                     }
                 }
                 return message;
             }
         });
     }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> argumentResolvers) {
+        argumentResolvers.add(new HandlerMethodArgumentResolver() {
+            @Override
+            public boolean supportsParameter(MethodParameter parameter) {
+                return CurrentUser.class.equals(parameter.getParameterType());
+            }
+
+            @Override
+            public Object resolveArgument(MethodParameter parameter, Message<?> message) {
+                return CurrentUserArgumentResolver.from(SimpMessageHeaderAccessor.getUser(message.getHeaders()));
+            }
+        });
+    }
 }
@@ -5,8 +5,8 @@ import com.main.editco.dto.LoginRequest;
 import com.main.editco.dto.RegisterRequest;
 import com.main.editco.service.AuthService;
 import com.main.editco.service.RateLimitingService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -23,7 +23,8 @@ public class AuthController {
     private RateLimitingService rateLimitingService;
 
     @PostMapping("/signup")
-    public ResponseEntity<?> register(@RequestBody RegisterRequest registerRequest) {
+    public ResponseEntity<?> register(@RequestBody RegisterRequest registerRequest, HttpServletRequest request) {
+        rateLimitingService.check(RateLimitingService.REGISTRATION, null, request.getRemoteAddr());
         User user = authService.register(registerRequest);
 
         if (user == null) {
@@ -42,15 +43,11 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
-        if (!rateLimitingService.allowRequest(loginRequest.getEmail())) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                    .body(Map.of(
-                            "error", "Too Many Requests",
-                            "message","Too many login attempts. Please try again in 1 minute.",
-                            "retryAfter", "60 seconds"
-                    ));
-        }
+    public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest, HttpServletRequest request) {
+        String email = loginRequest.getEmail() == null ? null : loginRequest.getEmail().trim().toLowerCase();
+        rateLimitingService.check(RateLimitingService.LOGIN, null, request.getRemoteAddr());
+        // an account guessed at from many addresses runs out here
+        rateLimitingService.check(RateLimitingService.LOGIN_ACCOUNT, email, request.getRemoteAddr());
 
         String jwt = authService.login(loginRequest);
 
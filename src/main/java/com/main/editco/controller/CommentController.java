@@ -1,14 +1,12 @@
 package com.main.editco.controller;
 
 import com.main.editco.dao.entities.Comment;
-import com.main.editco.dao.entities.User;
-import com.main.editco.dao.repositories.UserRepository;
+import com.main.editco.dto.CurrentUser;
 import com.main.editco.service.CommentService;
 import com.main.editco.service.PermissionCheckService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -23,32 +21,25 @@ public class CommentController {
     @Autowired
     PermissionCheckService permissionCheckService;
 
-    @Autowired
-    UserRepository userRepository;
-
     @PostMapping
     public ResponseEntity<?> addComment(@RequestBody Comment comment,
-                                        Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+                                        CurrentUser currentUser) {
 
         Long documentId = comment.getDocument().getId();
-        if (!permissionCheckService.canView(currentUser.getId(), documentId)) {
+        if (!permissionCheckService.canView(currentUser.id(), documentId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You don't have permission to comment on this document");
         }
 
-        comment.setUser(currentUser);
+        comment.setUser(currentUser.toUser());
         Comment createdComment = commentService.addComment(comment);
         return ResponseEntity.ok(createdComment);
     }
 
     @GetMapping("/doc/{docId}")
     public ResponseEntity<?> getCommentsByDocument(@PathVariable Long docId,
-                                                   Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        if (!permissionCheckService.canView(currentUser.getId(), docId)) {
+                                                   CurrentUser currentUser) {
+        if (!permissionCheckService.canView(currentUser.id(), docId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You don't have permission to view comments on this document");
         }
@@ -60,9 +51,7 @@ public class CommentController {
     @PutMapping("/{commentId}")
     public ResponseEntity<?> updateComment(@PathVariable Long commentId,
                                            @RequestBody Comment updatedComment,
-                                           Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+                                           CurrentUser currentUser) {
         Optional<Comment> existingCommentOpt = commentService.getCommentsByDocumentId(
                 updatedComment.getDocument().getId()
         ).stream().filter(c -> c.getId().equals(commentId)).findFirst();
@@ -73,7 +62,7 @@ public class CommentController {
 
         Comment existingComment = existingCommentOpt.get();
 
-        if (!existingComment.getUser().getId().equals(currentUser.getId())) {
+        if (!existingComment.getUser().getId().equals(currentUser.id())) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You can only edit your own comments");
         }
@@ -85,9 +74,7 @@ public class CommentController {
 
     @DeleteMapping("/{commentId}")
     public ResponseEntity<?> deleteComment(@PathVariable Long commentId,
-                                           Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+                                           CurrentUser currentUser) {
 
         Optional<Comment> commentOpt = commentService.getCommentsByDocumentId(0L)
                 .stream().filter(c -> c.getId().equals(commentId)).findFirst();
@@ -103,8 +90,8 @@ public class CommentController {
         Comment comment = commentOpt.get();
         Long documentId = comment.getDocument().getId();
 
-        boolean isAuthor = comment.getUser().getId().equals(currentUser.getId());
-        boolean isDocOwner = permissionCheckService.isOwner(currentUser.getId(), documentId);
+        boolean isAuthor = comment.getUser().getId().equals(currentUser.id());
+        boolean isDocOwner = permissionCheckService.isOwner(currentUser.id(), documentId);
 
         if (!isAuthor && !isDocOwner) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
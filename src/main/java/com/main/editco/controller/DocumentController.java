@@ -1,79 +1,114 @@
 package com.main.editco.controller;
 
 import com.main.editco.dao.entities.Document;
-import com.main.editco.dao.entities.User;
-import com.main.editco.dao.repositories.UserRepository;
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.DocumentPatch;
+import com.main.editco.dto.DocumentSummary;
+import com.main.editco.dto.DocumentVersion;
+import com.main.editco.dto.KeysetCursor;
 import com.main.editco.service.DocumentService;
 import com.main.editco.service.PermissionCheckService;
+import com.main.editco.util.ETags;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/docs")
 public class DocumentController {
+    private static final int MAX_PAGE_SIZE = 200;
+    // cacheable by the browser, but only after checking with us, so reloads send If-None-Match
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     @Autowired
     DocumentService documentService;
     @Autowired
-    private UserRepository userRepository;
-    @Autowired
     private PermissionCheckService permissionCheckService;
 
     @GetMapping
-    public List<Document>  getAllDocuments(Authentication authentication){
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        return documentService.getAllDocuments().stream()
-                .filter(doc -> permissionCheckService.canView(currentUser.getId(), doc.getId()))
-                .collect(Collectors.toList());
+    public ResponseEntity<List<DocumentSummary>> getAllDocuments(@RequestParam(defaultValue = "50") int limit,
+                                                                 @RequestParam(required = false) String cursor,
+                                                                 CurrentUser currentUser) {
+        checkLimit(limit);
+        return page(documentService.getAccessibleDocuments(currentUser.id(), KeysetCursor.parse(cursor), limit), limit);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> getDocument(@PathVariable Long id, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+    public ResponseEntity<?> getDocument(@PathVariable Long id,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                         CurrentUser currentUser) {
 
-        if (!permissionCheckService.canView(currentUser.getId(), id)) {
+        if (!permissionCheckService.canView(currentUser.id(), id)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You don't have permission to view this doc");
         }
+        // a client that already holds the current version gets it confirmed without the content being read
+        Optional<DocumentVersion> version = documentService.getDocumentVersion(id);
+        if (version.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (ETags.noneMatchFails(ifNoneMatch, version.get().etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(version.get().etag()).cacheControl(REVALIDATE).build();
+        }
         Optional<Document> document = documentService.getDocumentById(id);
-        return document.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        return document.map(DocumentController::withETag).orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping
-    public ResponseEntity<Document> createDocument(@RequestBody Document document, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        document.setOwner(currentUser);
+    public ResponseEntity<Document> createDocument(@RequestBody Document document, CurrentUser currentUser) {
+        document.setOwner(currentUser.toUser());
         Document createdDocument = documentService.createDocument(document);
         return ResponseEntity.ok(createdDocument);
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<?> updateDocument(@PathVariable Long id, @RequestBody Document document, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        if (!permissionCheckService.canEdit(currentUser.getId(), id)) {
+    public ResponseEntity<?> updateDocument(@PathVariable Long id, @RequestBody Document document,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                            CurrentUser currentUser) {
+        if (!permissionCheckService.canEdit(currentUser.id(), id)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body("You don't have the permission to edit this document.");
+        }
+        Optional<Document> updatedDocument = documentService.updateDocument(id, document, ifMatch);
+        return updatedDocument.map(DocumentController::withETag).orElse(ResponseEntity.notFound().build());
+    }
+
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patchDocument(@PathVariable Long id, @RequestBody DocumentPatch patch,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           CurrentUser currentUser) {
+        if (!permissionCheckService.canEdit(currentUser.id(), id)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You don't have the permission to edit this document.");
         }
-        Optional<Document> updatedDocument = documentService.updateDocument(id, document);
-        return updatedDocument.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        if (patch.getDelta() != null) {
+            if (patch.getTitle() != null || patch.getContent() != null || ifMatch != null) {
+                throw new IllegalArgumentException("A delta is sent on its own and ordered by its baseRevision, not If-Match");
+            }
+            // the applied edit carries the revision it landed on; 202 when the owning node applies it
+            DocumentEditMessage applied = documentService.applyDelta(id, patch.getDelta(), currentUser);
+            return applied != null ? ResponseEntity.ok(applied) : ResponseEntity.accepted().build();
+        }
+        if (patch.getTitle() == null && patch.getContent() == null) {
+            throw new IllegalArgumentException("Nothing to update, send a title, content or delta");
+        }
+        // no body back, the new ETag is all a client needs to keep its copy current
+        Optional<DocumentVersion> version = documentService.patchDocument(id, patch.getTitle(), patch.getContent(), ifMatch);
+        return version.<ResponseEntity<?>>map(v -> ResponseEntity.noContent().eTag(v.etag()).build())
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteDocument(@PathVariable Long id, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+    public ResponseEntity<?> deleteDocument(@PathVariable Long id, CurrentUser currentUser) {
 
-        if (!permissionCheckService.canDelete(currentUser.getId(), id)) {
+        if (!permissionCheckService.canDelete(currentUser.id(), id)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You don't have the permission to delete this document.");
         }
@@ -85,17 +120,38 @@ public class DocumentController {
     }
 
     @GetMapping("/owner/{ownerId}")
-    public ResponseEntity<?> getDocumentsByOwnerId(@PathVariable Long ownerId, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+    public ResponseEntity<?> getDocumentsByOwnerId(@PathVariable Long ownerId,
+                                                   @RequestParam(defaultValue = "50") int limit,
+                                                   @RequestParam(required = false) String cursor,
+                                                   CurrentUser currentUser) {
 
-        if (!currentUser.getId().equals(ownerId))
+        if (!currentUser.id().equals(ownerId))
         {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You can't view this document");
         }
-        List<Document> documents = documentService.getDocumentsByOwnerId(ownerId);
-        return ResponseEntity.ok(documents);
+        checkLimit(limit);
+        return page(documentService.getDocumentsByOwnerId(ownerId, KeysetCursor.parse(cursor), limit), limit);
+    }
+
+    private static ResponseEntity<Document> withETag(Document document) {
+        return ResponseEntity.ok().eTag(DocumentVersion.of(document).etag()).cacheControl(REVALIDATE).body(document);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    // A full page may have more behind it, so hand out the cursor of its last row
+    private static ResponseEntity<List<DocumentSummary>> page(List<DocumentSummary> documents, int limit) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (documents.size() == limit) {
+            DocumentSummary last = documents.get(documents.size() - 1);
+            response.header("X-Next-Cursor", new KeysetCursor(last.getUpdatedAt(), last.getId()).encode());
+        }
+        return response.body(documents);
     }
 
 }
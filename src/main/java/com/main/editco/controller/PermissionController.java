@@ -1,14 +1,12 @@
 package com.main.editco.controller;
 
 import com.main.editco.dao.entities.Permission;
-import com.main.editco.dao.entities.User;
-import com.main.editco.dao.repositories.UserRepository;
+import com.main.editco.dto.CurrentUser;
 import com.main.editco.service.PermissionCheckService;
 import com.main.editco.service.PermissionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -20,16 +18,11 @@ public class PermissionController {
     PermissionService permissionService;
     @Autowired
     PermissionCheckService permissionCheckService;
-    @Autowired
-    UserRepository userRepository;
-
 
     @PostMapping("/grant")
-    public ResponseEntity<?> grant(@RequestBody Permission permission, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+    public ResponseEntity<?> grant(@RequestBody Permission permission, CurrentUser currentUser) {
         Long documentId = permission.getDocument().getId();
-        if (!permissionCheckService.canManagePermissions(currentUser.getId(), documentId)) {
+        if (!permissionCheckService.canManagePermissions(currentUser.id(), documentId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Only the document owner can grant permissions");
         }
         Permission grantedPermission = permissionService.grantPermission(permission);
@@ -37,15 +30,13 @@ public class PermissionController {
     }
 
     @DeleteMapping("/{permissionId}")
-    public ResponseEntity<?> revoke(@PathVariable Long permissionId, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+    public ResponseEntity<?> revoke(@PathVariable Long permissionId, CurrentUser currentUser) {
         var permissionOpt = permissionService.getPermission(permissionId);
         if (!permissionOpt.isPresent())
             return ResponseEntity.notFound().build();
         Permission permission = permissionOpt.get();
         Long documentId = permission.getDocument().getId();
-        if (!permissionCheckService.canManagePermissions(currentUser.getId(), documentId)) {
+        if (!permissionCheckService.canManagePermissions(currentUser.id(), documentId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Only the document owner can revoke permissions");
         }
         boolean revokedPermission = permissionService.revokePermission(permissionId);
@@ -56,10 +47,8 @@ public class PermissionController {
     }
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<?> getPermissionsByUser(@PathVariable Long userId, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        if (!currentUser.getId().equals(userId))
+    public ResponseEntity<?> getPermissionsByUser(@PathVariable Long userId, CurrentUser currentUser) {
+        if (!currentUser.id().equals(userId))
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("You can only view your own permissions");
         List<Permission> permissions = permissionService.getPermissionsByUserId(userId);
         return ResponseEntity.ok(permissions);
@@ -67,10 +56,8 @@ public class PermissionController {
     }
 
     @GetMapping("/doc/{documentId}")
-    public ResponseEntity<?> getPermissionsByDocument(@PathVariable Long documentId, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        if (!permissionCheckService.isOwner(currentUser.getId(), documentId)) {
+    public ResponseEntity<?> getPermissionsByDocument(@PathVariable Long documentId, CurrentUser currentUser) {
+        if (!permissionCheckService.isOwner(currentUser.id(), documentId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("Only document owner can view all permissions");
         }
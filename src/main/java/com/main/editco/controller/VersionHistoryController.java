@@ -1,16 +1,20 @@
 package com.main.editco.controller;
 
 import com.main.editco.dao.entities.Document;
-import com.main.editco.dao.entities.User;
 import com.main.editco.dao.entities.VersionHistory;
-import com.main.editco.dao.repositories.DocumentRepository;
-import com.main.editco.dao.repositories.UserRepository;
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.dto.DocumentVersion;
+import com.main.editco.dto.KeysetCursor;
+import com.main.editco.dto.VersionSummary;
+import com.main.editco.service.DocumentService;
 import com.main.editco.service.PermissionCheckService;
 import com.main.editco.service.VersionHistoryService;
+import com.main.editco.util.ETags;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -19,24 +23,23 @@ import java.util.Optional;
 @RestController
 @RequestMapping("/api/history")
 public class VersionHistoryController {
+    private static final int MAX_PAGE_SIZE = 200;
+    // permissions can be revoked, so a cached version is only reused after asking
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     @Autowired
     VersionHistoryService versionHistoryService;
     @Autowired
-    private DocumentRepository documentRepository;
-
-    @Autowired
-    private UserRepository userRepository;
+    private DocumentService documentService;
 
     @Autowired
     private PermissionCheckService  permissionCheckService;
 
     @PostMapping
-    public ResponseEntity<?> addVersionHistory(@RequestBody VersionHistory versionHistory, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+    public ResponseEntity<?> addVersionHistory(@RequestBody VersionHistory versionHistory, CurrentUser currentUser) {
         Long documentId = versionHistory.getDocument().getId();
 
-        if (!permissionCheckService.canEdit(currentUser.getId(), documentId)) {
+        if (!permissionCheckService.canEdit(currentUser.id(), documentId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("You don't have permission to create version history");
         }
         VersionHistory createdVersionHistory = versionHistoryService.addVersionHistory(versionHistory);
@@ -44,37 +47,52 @@ public class VersionHistoryController {
     }
 
     @GetMapping("/document/{documentId}")
-    public ResponseEntity<?> getVersionHistory(@PathVariable Long documentId, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        if (!permissionCheckService.canView(currentUser.getId(), documentId)) {
+    public ResponseEntity<?> getVersionHistory(@PathVariable Long documentId,
+                                               @RequestParam(defaultValue = "50") int limit,
+                                               @RequestParam(required = false) String cursor,
+                                               CurrentUser currentUser) {
+        if (!permissionCheckService.canView(currentUser.id(), documentId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("You don't have permission to view this version history");
         }
-        List<VersionHistory> versionHistory = versionHistoryService.getVersionHistory(documentId);
-        return ResponseEntity.status(HttpStatus.OK).body(versionHistory);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // summaries only, content is fetched per version through /api/history/{versionId}
+        List<VersionSummary> page = versionHistoryService.getVersionSummaries(documentId, KeysetCursor.parse(cursor), limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if (page.size() == limit) {
+            VersionSummary last = page.get(page.size() - 1);
+            response.header("X-Next-Cursor", new KeysetCursor(last.getTimestamp(), last.getId()).encode());
+        }
+        return response.body(page);
     }
 
     @GetMapping("/{versionId}")
-    public ResponseEntity<?> getVersion(@PathVariable Long versionId,  Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
-        Optional<VersionHistory> versionOpt = versionHistoryService.getVersion(versionId);
-        if (!versionOpt.isPresent()) {
+    public ResponseEntity<?> getVersion(@PathVariable Long versionId,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                        CurrentUser currentUser) {
+        Optional<Long> documentId = versionHistoryService.getDocumentId(versionId);
+        if (documentId.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        VersionHistory versionHistory = versionOpt.get();
-        Long documentId = versionHistory.getDocument().getId();
-        if (!permissionCheckService.canView(currentUser.getId(), documentId)) {
+        if (!permissionCheckService.canView(currentUser.id(), documentId.get())) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You don't have permission to view this version history");
         }
-        return ResponseEntity.status(HttpStatus.OK).body(versionHistory);
+        // versions are never rewritten, so the id alone identifies the content and no delta chain is replayed
+        String etag = ETags.of(versionId);
+        if (ETags.noneMatchFails(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).build();
+        }
+        Optional<VersionHistory> versionOpt = versionHistoryService.getVersion(versionId);
+        if (!versionOpt.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).eTag(etag).cacheControl(REVALIDATE).body(versionOpt.get());
     }
 
     @PostMapping("/{versionId}/restore")
-    public ResponseEntity<?> restoreVersion(@PathVariable Long versionId, Authentication authentication) {
-        String email = authentication.getName();
-        User currentUser = userRepository.findByEmail(email);
+    public ResponseEntity<?> restoreVersion(@PathVariable Long versionId, CurrentUser currentUser) {
         Optional<VersionHistory> versionOpt = versionHistoryService.getVersion(versionId);
         if (!versionOpt.isPresent()) {
             return ResponseEntity.notFound().build();
@@ -82,11 +100,11 @@ public class VersionHistoryController {
         VersionHistory versionToRestore = versionOpt.get();
         Long documentId = versionToRestore.getDocument().getId();
 
-        if (!permissionCheckService.canEdit(currentUser.getId(), documentId)) {
+        if (!permissionCheckService.canEdit(currentUser.id(), documentId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("You don't have permission to restore this version history");
         }
-        Optional<Document> documentOpt = documentRepository.findById(documentId);
+        Optional<Document> documentOpt = documentService.getDocumentById(documentId);
         if (!documentOpt.isPresent()) {
             return ResponseEntity.notFound().build();
         }
@@ -94,12 +112,10 @@ public class VersionHistoryController {
         VersionHistory currentStateBackup = new VersionHistory();
         currentStateBackup.setDocument(document);
         currentStateBackup.setContent(document.getContent());
-        currentStateBackup.setEditedBy(currentUser);
+        currentStateBackup.setEditedBy(currentUser.toUser());
         currentStateBackup.setTimestamp(java.time.Instant.now());
         versionHistoryService.addVersionHistory(currentStateBackup);
-        document.setContent(versionToRestore.getContent());
-        document.setUpdatedAt(versionToRestore.getTimestamp());
-        documentRepository.save(document);
-        return ResponseEntity.status(HttpStatus.OK).body(document);
+        Document restored = documentService.restoreContent(document, versionToRestore.getContent());
+        return ResponseEntity.status(HttpStatus.OK).eTag(DocumentVersion.of(restored).etag()).body(restored);
     }
 }
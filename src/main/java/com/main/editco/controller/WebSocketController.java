@@ -1,53 +1,117 @@
 package com.main.editco.controller;
 
+import com.main.editco.dto.CurrentUser;
 import com.main.editco.dto.CursorPositionMessage;
+import com.main.editco.dto.DocumentCatchUpMessage;
 import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.DocumentResyncRequest;
 // import org.apache.logging.log4j.message.SimpleMessage;
-import com.main.editco.dto.UserPresenceMessage;
+import com.main.editco.service.CursorAggregator;
+import com.main.editco.service.DocumentAffinityRouter;
+import com.main.editco.service.PermissionCheckService;
+import com.main.editco.service.RateLimitExceededException;
+import com.main.editco.service.RateLimitingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.stereotype.Controller;
 
+import java.time.Instant;
+import java.util.Map;
+
+@Slf4j
 @Controller
 public class WebSocketController {
+    @Autowired
+    private DocumentAffinityRouter documentAffinityRouter;
+    @Autowired
+    private PermissionCheckService permissionCheckService;
+    @Autowired
+    private RateLimitingService rateLimitingService;
+    @Autowired
+    private CursorAggregator cursorAggregator;
+
     @MessageMapping("/document/{documentId}/edit")
     @SendTo("/topic/document/{documentId}/updates")
     public DocumentEditMessage handleDocumentEdit(@DestinationVariable Long documentId,
                                                   DocumentEditMessage message,
+                                                  CurrentUser currentUser,
                                                   SimpMessageHeaderAccessor headerAccessor) {
-
+        limit(currentUser);
+        if (!permissionCheckService.canEdit(currentUser.id(), documentId)) {
+            throw new AccessDeniedException("You don't have the permission to edit this document.");
+        }
         String sessionId = headerAccessor.getSessionId();
         message.setSessionId(sessionId);
+        message.setEmail(currentUser.email());
         message.setTimestamp(System.currentTimeMillis());
-        return message;
+        // null when the edit went to the node that owns the document, which broadcasts it
+        return documentAffinityRouter.applyOrForward(documentId, message,
+                headerAccessor.getUser() != null ? headerAccessor.getUser().getName() : null);
+    }
+    // Sent by a client after reconnecting: only what it missed since the last revision it saw comes
+    // back, or the whole document when that is too far behind
+    @MessageMapping("/document/{documentId}/resync")
+    @SendToUser(destinations = "/queue/resync", broadcast = false)
+    public DocumentCatchUpMessage handleResync(@DestinationVariable Long documentId,
+                                               DocumentResyncRequest request,
+                                               CurrentUser currentUser,
+                                               SimpMessageHeaderAccessor headerAccessor) {
+        limit(currentUser);
+        if (!permissionCheckService.canView(currentUser.id(), documentId)) {
+            throw new AccessDeniedException("You don't have the permission to view this document.");
+        }
+        long revision = request.getRevision() == null ? -1 : request.getRevision();
+        // null when the node that owns the document answers
+        return documentAffinityRouter.catchUpOrForward(documentId, revision,
+                headerAccessor.getUser() != null ? headerAccessor.getUser().getName() : null,
+                headerAccessor.getSessionId());
     }
+
+    // Not echoed directly: the aggregator publishes conflated batches on the cursors topic
     @MessageMapping("/document/{documentId}/cursor")
-    @SendTo("/topic/document/{documentId}/cursors")
-    public CursorPositionMessage handleCursorPosition(
+    public void handleCursorPosition(
             @DestinationVariable Long documentId,
             CursorPositionMessage message,
+            CurrentUser currentUser,
             SimpMessageHeaderAccessor headerAccessor) {
-
+        limit(currentUser);
+        if (!permissionCheckService.canView(currentUser.id(), documentId)) {
+            throw new AccessDeniedException("You don't have the permission to view this document.");
+        }
         String sessionId = headerAccessor.getSessionId();
+        message.setDocumentId(documentId);
         message.setSessionId(sessionId);
+        // who the cursor belongs to comes from the connection, never from the payload
+        message.setUserId(String.valueOf(currentUser.id()));
+        message.setUserName(currentUser.displayName());
         message.setTimestamp(System.currentTimeMillis());
-
-        return message;
+        cursorAggregator.submit(documentId, message);
     }
 
-    @MessageMapping("/document/{documentId}/presence")
-    @SendTo("/topic/document/{documentId}/presence")
-    public UserPresenceMessage handleUserPresence(
-            @DestinationVariable Long documentId,
-            UserPresenceMessage message,
-            SimpMessageHeaderAccessor headerAccessor) {
-
-        String sessionId = headerAccessor.getSessionId();
-        message.setSessionId(sessionId);
-        message.setTimestamp(System.currentTimeMillis());
+    private void limit(CurrentUser currentUser) {
+        rateLimitingService.check(RateLimitingService.WEBSOCKET_MESSAGE, String.valueOf(currentUser.id()), null);
+    }
 
-        return message;
+    @MessageExceptionHandler({IllegalArgumentException.class, IllegalStateException.class,
+            AccessDeniedException.class, AuthenticationException.class, RateLimitExceededException.class})
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public Map<String, Object> handleEditError(RuntimeException ex, SimpMessageHeaderAccessor headerAccessor) {
+        log.warn("Rejected message from session {}: {}", headerAccessor.getSessionId(), ex.getMessage());
+        String error = ex instanceof IllegalStateException ? "Resync Required"
+                : ex instanceof IllegalArgumentException ? "Bad Request"
+                : ex instanceof RateLimitExceededException ? "Too Many Requests" : "Forbidden";
+        return Map.of(
+                "timestamp", Instant.now().toString(),
+                "error", error,
+                "message", ex.getMessage()
+        );
     }
 }
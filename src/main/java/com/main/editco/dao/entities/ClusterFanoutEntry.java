@@ -0,0 +1,27 @@
+package com.main.editco.dao.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// A broadcast relayed between nodes by PostgresClusterFanout; rows only live for a short retention
+@Entity
+@Table(name = "cluster_fanout")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterFanoutEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String originNode;
+    private String destination;
+    private String contentType;
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+    private Long sentAt;
+    private Instant createdAt;
+}
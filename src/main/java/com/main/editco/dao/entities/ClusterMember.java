@@ -0,0 +1,22 @@
+package com.main.editco.dao.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// A running node, kept alive by ClusterMembership's heartbeat; rows whose heartbeat is older than
+// collab.cluster.node-timeout-ms belong to nodes that are gone
+@Entity
+@Table(name = "cluster_members")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterMember {
+    @Id
+    private String nodeId;
+    private Instant startedAt;
+    private Instant heartbeatAt;
+}
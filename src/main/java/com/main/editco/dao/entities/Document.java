@@ -5,27 +5,42 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.Instant;
 import java.util.Set;
 
 @Entity
+@DynamicUpdate // a rename writes the title, not the whole content column
+@Table(indexes = @Index(name = "idx_document_owner_updated", columnList = "owner_id, updated_at"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Document {
+    public static final int PREVIEW_LENGTH = 160;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String title;
     @Column(columnDefinition = "TEXT")
     private String content;
+    @JsonIgnore
+    @Column(length = PREVIEW_LENGTH)
+    private String preview; // start of the content, so document lists never read the content column
     @ManyToOne
     @JoinColumn(name="owner_id")
     private User owner;
     private Instant createdAt;
     private Instant updatedAt;
     @JsonIgnore
+    private Long snapshotSequence; // last edit journal entry already folded into content
+    @JsonIgnore
+    @Version
+    @ColumnDefault("0")
+    private long version; // bumped by every write of the row, the document's ETag is derived from it
+    @JsonIgnore
     @OneToMany(mappedBy = "document")
     private Set<Permission> permissions;
     @JsonIgnore
@@ -34,4 +49,14 @@ public class Document {
     @JsonIgnore
     @OneToMany(mappedBy = "document")
     private Set<VersionHistory>  versions;
+
+    // every content change made through the entity moves the preview along with it
+    public void setContent(String content) {
+        this.content = content;
+        this.preview = preview(content);
+    }
+
+    public static String preview(String content) {
+        return content == null || content.length() <= PREVIEW_LENGTH ? content : content.substring(0, PREVIEW_LENGTH);
+    }
 }
@@ -0,0 +1,35 @@
+package com.main.editco.dao.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "edit_journal",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"document_id", "sequence_number"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EditJournalEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "document_id")
+    private Document document;
+    @Column(name = "sequence_number", nullable = false)
+    private Long sequenceNumber;
+    private String operation;
+    private Integer cursorPosition;
+    private Integer removedLength;
+    @Column(columnDefinition = "TEXT")
+    private String changeContent;
+    private String sessionId;
+    private String email;
+    private Instant createdAt;
+}
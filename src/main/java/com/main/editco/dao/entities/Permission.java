@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+@Table(indexes = @Index(name = "idx_permission_user_document", columnList = "user_id, document_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -1,5 +1,6 @@
 package com.main.editco.dao.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -21,11 +22,28 @@ public class VersionHistory {
     @JsonIgnoreProperties({"comments", "versions", "permissions", "content"})
     private Document document;
     @Column(columnDefinition = "TEXT")
-    private String content;
+    private String content; // only stored on keyframes, rebuilt for delta versions
+    @JsonIgnore
+    @Column(columnDefinition = "TEXT")
+    private String delta; // TextDelta against baseVersionId, null on keyframes
+    @JsonIgnore
+    private Long baseVersionId;
+    @JsonIgnore
+    private Long keyframeId;
+    @JsonIgnore
+    private Integer chainDepth;
+    private Integer contentLength;
+    @Column(length = 160)
+    private String preview;
     @ManyToOne
     @JoinColumn(name = "edited_by")
     @JsonIgnoreProperties({"passwordHashed", "ownedDocuments", "permissions", "comments"})
     private User editedBy;
 
     private Instant timestamp;
+
+    @JsonIgnore
+    public boolean isKeyframe() {
+        return delta == null;
+    }
 }
@@ -0,0 +1,26 @@
+package com.main.editco.dao.repositories;
+
+import com.main.editco.dao.entities.ClusterMember;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ClusterMemberRepository extends JpaRepository<ClusterMember, String> {
+    @Query("select m.nodeId from ClusterMember m where m.heartbeatAt >= :since")
+    List<String> findNodeIdsAliveSince(@Param("since") Instant since);
+
+    @Transactional
+    @Modifying
+    @Query("update ClusterMember m set m.heartbeatAt = :heartbeatAt where m.nodeId = :nodeId")
+    int touch(@Param("nodeId") String nodeId, @Param("heartbeatAt") Instant heartbeatAt);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ClusterMember m where m.heartbeatAt < :before")
+    int deleteDeadBefore(@Param("before") Instant before);
+}
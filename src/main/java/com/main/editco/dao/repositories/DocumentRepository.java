@@ -1,10 +1,87 @@
 package com.main.editco.dao.repositories;
 
 import com.main.editco.dao.entities.Document;
+import com.main.editco.dto.DocumentSummary;
+import com.main.editco.dto.DocumentVersion;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 public interface DocumentRepository extends JpaRepository<Document,Long> {
-    List<Document> findByOwnerId(Long ownerId);
+    String SUMMARY = "select new com.main.editco.dto.DocumentSummary(d.id, d.title, o.id, o.name, d.createdAt, d.updatedAt, " +
+            "case when o.id = :userId then com.main.editco.dao.entities.AccessType.OWNER else p.accessType end, " +
+            "d.preview) " +
+            "from Document d join d.owner o left join Permission p on p.document = d and p.user.id = :userId ";
+    String ACCESSIBLE = "where (o.id = :userId or p.id is not null) ";
+    String OWNED = "where o.id = :userId ";
+    String BEFORE = "and (d.updatedAt < :updatedAt or (d.updatedAt = :updatedAt and d.id < :id)) ";
+    String NEWEST_FIRST = "order by d.updatedAt desc, d.id desc";
+
+    // Documents the user owns or has been granted, newest first, without the content column
+    @Query(SUMMARY + ACCESSIBLE + NEWEST_FIRST)
+    List<DocumentSummary> findAccessible(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(SUMMARY + ACCESSIBLE + BEFORE + NEWEST_FIRST)
+    List<DocumentSummary> findAccessibleBefore(@Param("userId") Long userId,
+                                               @Param("updatedAt") Instant updatedAt,
+                                               @Param("id") Long id,
+                                               Pageable pageable);
+
+    @Query(SUMMARY + OWNED + NEWEST_FIRST)
+    List<DocumentSummary> findOwned(@Param("userId") Long ownerId, Pageable pageable);
+
+    @Query(SUMMARY + OWNED + BEFORE + NEWEST_FIRST)
+    List<DocumentSummary> findOwnedBefore(@Param("userId") Long ownerId,
+                                          @Param("updatedAt") Instant updatedAt,
+                                          @Param("id") Long id,
+                                          Pageable pageable);
+
+    // (document id, owner id) pairs, used to build the access control index
+    @Query("select d.id, d.owner.id from Document d")
+    List<Object[]> findAllOwnerships();
+
+    // Enough to answer a conditional request without reading the content column
+    @Query("select new com.main.editco.dto.DocumentVersion(d.version, coalesce(d.snapshotSequence, 0L)) " +
+            "from Document d where d.id = :id")
+    Optional<DocumentVersion> findVersionById(@Param("id") Long id);
+
+    // A live session's snapshot; writes nothing and returns 0 when the row changed since the session read it.
+    // version is always past expectedVersion, so every write moves the row on
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.title = :title, d.content = :content, d.preview = :preview, d.updatedAt = :updatedAt, " +
+            "d.snapshotSequence = :snapshotSequence, d.version = :version where d.id = :id and d.version = :expectedVersion")
+    int updateSnapshot(@Param("id") Long id,
+                       @Param("title") String title,
+                       @Param("content") String content,
+                       @Param("preview") String preview,
+                       @Param("updatedAt") Instant updatedAt,
+                       @Param("snapshotSequence") Long snapshotSequence,
+                       @Param("version") long version,
+                       @Param("expectedVersion") long expectedVersion);
+
+    // Rows written before the preview column existed; reads their content once
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.preview = substring(d.content, 1, " + Document.PREVIEW_LENGTH + ") " +
+            "where d.preview is null and d.content is not null")
+    int fillMissingPreviews();
+
+    // A rename flushed from a live session, without rewriting the content column
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.title = :title, d.updatedAt = :updatedAt, d.version = :version " +
+            "where d.id = :id and d.version = :expectedVersion")
+    int updateTitle(@Param("id") Long id,
+                    @Param("title") String title,
+                    @Param("updatedAt") Instant updatedAt,
+                    @Param("version") long version,
+                    @Param("expectedVersion") long expectedVersion);
 }
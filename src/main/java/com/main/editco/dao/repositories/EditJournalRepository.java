@@ -0,0 +1,28 @@
+package com.main.editco.dao.repositories;
+
+import com.main.editco.dao.entities.EditJournalEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface EditJournalRepository extends JpaRepository<EditJournalEntry, Long> {
+    List<EditJournalEntry> findByDocumentIdAndSequenceNumberGreaterThanOrderBySequenceNumberAsc(Long documentId, Long sequenceNumber);
+
+    @Query("select distinct e.document.id from EditJournalEntry e " +
+            "where e.sequenceNumber > coalesce(e.document.snapshotSequence, 0)")
+    List<Long> findDocumentIdsWithPendingEdits();
+
+    @Transactional
+    @Modifying
+    @Query("delete from EditJournalEntry e where e.document.id = :documentId and e.sequenceNumber <= :sequenceNumber")
+    int deleteUpTo(@Param("documentId") Long documentId, @Param("sequenceNumber") Long sequenceNumber);
+
+    @Transactional
+    @Modifying
+    @Query("delete from EditJournalEntry e where e.document.id = :documentId")
+    int deleteByDocument(@Param("documentId") Long documentId);
+}
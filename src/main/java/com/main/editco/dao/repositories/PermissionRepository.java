@@ -2,10 +2,15 @@ package com.main.editco.dao.repositories;
 
 import com.main.editco.dao.entities.Permission;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
 public interface PermissionRepository extends JpaRepository<Permission,Long> {
     List<Permission> findByDocumentId(Long documentId);
     List<Permission> findByUserId(Long userId);
+
+    // (document id, user id, access type) triples, used to build the access control index
+    @Query("select p.document.id, p.user.id, p.accessType from Permission p")
+    List<Object[]> findAllGrants();
 }
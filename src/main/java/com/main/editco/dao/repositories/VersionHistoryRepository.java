@@ -1,10 +1,41 @@
 package com.main.editco.dao.repositories;
 
 import com.main.editco.dao.entities.VersionHistory;
+import com.main.editco.dto.VersionSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 public interface VersionHistoryRepository extends JpaRepository<VersionHistory,Long> {
-    List<VersionHistory> findByDocumentIdOrderByTimestampDesc(Long documentId);
+    VersionHistory findFirstByDocumentIdOrderByIdDesc(Long documentId);
+
+    // The keyframe a version hangs off and every delta between them
+    @Query("select v from VersionHistory v where (v.id = :keyframeId or v.keyframeId = :keyframeId) " +
+            "and v.id <= :versionId order by v.id asc")
+    List<VersionHistory> findChain(@Param("keyframeId") Long keyframeId, @Param("versionId") Long versionId);
+
+    @Query("select new com.main.editco.dto.VersionSummary(v.id, v.timestamp, u.id, u.name, v.contentLength, v.preview) " +
+            "from VersionHistory v left join v.editedBy u where v.document.id = :documentId " +
+            "order by v.timestamp desc, v.id desc")
+    List<VersionSummary> findSummaries(@Param("documentId") Long documentId, Pageable pageable);
+
+    @Query("select new com.main.editco.dto.VersionSummary(v.id, v.timestamp, u.id, u.name, v.contentLength, v.preview) " +
+            "from VersionHistory v left join v.editedBy u where v.document.id = :documentId " +
+            "and (v.timestamp < :timestamp or (v.timestamp = :timestamp and v.id < :id)) " +
+            "order by v.timestamp desc, v.id desc")
+    List<VersionSummary> findSummariesBefore(@Param("documentId") Long documentId,
+                                             @Param("timestamp") Instant timestamp,
+                                             @Param("id") Long id,
+                                             Pageable pageable);
+
+    @Query("select v.document.id from VersionHistory v where v.id = :versionId")
+    Optional<Long> findDocumentIdById(@Param("versionId") Long versionId);
+
+    @Query("select v.id from VersionHistory v where v.document.id = :documentId and v.id > :afterId order by v.id asc")
+    List<Long> findIdsAfter(@Param("documentId") Long documentId, @Param("afterId") Long afterId, Pageable pageable);
 }
@@ -0,0 +1,22 @@
+package com.main.editco.dto;
+
+import com.main.editco.dao.entities.User;
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+// Principal put in the security context once a token is verified. getName() stays the email
+// so existing authentication.getName() callers keep working.
+public record CurrentUser(Long id, String email, String displayName) implements AuthenticatedPrincipal {
+    @Override
+    public String getName() {
+        return email;
+    }
+
+    // Unmanaged User carrying only the id, enough to set a foreign key without loading the row
+    public User toUser() {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        user.setName(displayName);
+        return user;
+    }
+}
@@ -0,0 +1,17 @@
+package com.main.editco.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Latest cursor of every session that moved since the previous tick
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorBatchMessage {
+    private Long documentId;
+    private List<CursorPositionMessage> cursors;
+    private Long timestamp;
+}
@@ -0,0 +1,21 @@
+package com.main.editco.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Answer to a resync request: the operations broadcast after fromRevision, in order, or when the
+// server no longer has them all, title and content as of revision
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentCatchUpMessage {
+    private Long documentId;
+    private Long fromRevision;
+    private Long revision;
+    private List<DocumentEditMessage> operations;
+    private String title;
+    private String content;
+}
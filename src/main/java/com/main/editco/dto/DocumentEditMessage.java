@@ -14,7 +14,10 @@ public class DocumentEditMessage {
     private String operation; // this will genenrally be "insert", "delete" or "replace"
     private Integer cursorPosition;
     private String changeContent;
-    private Integer length;
+    private Integer length; // number of characters removed at cursorPosition (delete / replace)
     private String sessionId;
     private Long timestamp;
+    private Long baseRevision; // revision the client generated the operation against
+    private Long revision; // revision assigned by the server once the operation is applied
+    private String clientEditId; // chosen by the sending client and echoed back, so it can recognise its own edit
 }
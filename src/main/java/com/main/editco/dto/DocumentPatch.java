@@ -0,0 +1,17 @@
+package com.main.editco.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Body of PATCH /api/docs/{id}. Fields left out are not touched: a rename sends the title only.
+// A delta is a single edit (insert, delete or replace at a position against baseRevision) and is
+// sent on its own.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentPatch {
+    private String title;
+    private String content;
+    private DocumentEditMessage delta;
+}
@@ -0,0 +1,12 @@
+package com.main.editco.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentResyncRequest {
+    private Long revision; // last revision the client saw on the updates topic, null for none
+}
@@ -0,0 +1,29 @@
+package com.main.editco.dto;
+
+import com.main.editco.dao.entities.AccessType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSummary {
+    private Long id;
+    private String title;
+    private Owner owner;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private AccessType accessType;
+    private String preview;
+
+    // used by the JPQL constructor expressions in DocumentRepository
+    public DocumentSummary(Long id, String title, Long ownerId, String ownerName, Instant createdAt,
+                           Instant updatedAt, AccessType accessType, String preview) {
+        this(id, title, new Owner(ownerId, ownerName), createdAt, updatedAt, accessType, preview);
+    }
+
+    public record Owner(Long id, String name) {}
+}
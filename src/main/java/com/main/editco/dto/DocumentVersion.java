@@ -0,0 +1,18 @@
+package com.main.editco.dto;
+
+import com.main.editco.dao.entities.Document;
+import com.main.editco.util.ETags;
+
+// What identifies one state of a document's title and content: the version of the row it was loaded
+// from, bumped by every write, and the revision a live session has applied on top of that row
+public record DocumentVersion(Long version, Long revision) {
+
+    public static DocumentVersion of(Document document) {
+        return new DocumentVersion(document.getVersion(),
+                document.getSnapshotSequence() == null ? 0L : document.getSnapshotSequence());
+    }
+
+    public String etag() {
+        return ETags.of(version, revision);
+    }
+}
@@ -0,0 +1,24 @@
+package com.main.editco.dto;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+// Position of the last row of a page sorted by (timestamp desc, id desc), encoded as "<instant>_<id>"
+public record KeysetCursor(Instant timestamp, Long id) {
+
+    public static KeysetCursor parse(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        int separator = cursor.lastIndexOf('_');
+        try {
+            return new KeysetCursor(Instant.parse(cursor.substring(0, separator)), Long.valueOf(cursor.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public String encode() {
+        return timestamp + "_" + id;
+    }
+}
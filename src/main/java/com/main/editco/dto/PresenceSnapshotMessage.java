@@ -0,0 +1,18 @@
+package com.main.editco.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Everyone present on a document, sent once to a new presence subscriber; join/leave diffs follow
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceSnapshotMessage {
+    private Long documentId;
+    private String action; // always "snapshot"
+    private List<UserPresenceMessage> users;
+    private Long timestamp;
+}
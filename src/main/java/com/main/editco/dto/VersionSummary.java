@@ -0,0 +1,25 @@
+package com.main.editco.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionSummary {
+    private Long id;
+    private Instant timestamp;
+    private Editor editedBy;
+    private Integer contentLength;
+    private String preview;
+
+    // used by the JPQL constructor expression in VersionHistoryRepository
+    public VersionSummary(Long id, Instant timestamp, Long editorId, String editorName, Integer contentLength, String preview) {
+        this(id, timestamp, editorId == null ? null : new Editor(editorId, editorName), contentLength, preview);
+    }
+
+    public record Editor(Long id, String name) {}
+}
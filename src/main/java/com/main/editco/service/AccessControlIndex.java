@@ -0,0 +1,213 @@
+package com.main.editco.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.editco.dao.entities.AccessType;
+import com.main.editco.dao.repositories.DocumentRepository;
+import com.main.editco.dao.repositories.PermissionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every document's owner and grants, held in memory so permission checks never touch the database.
+// Listings still come from the database, which joins the grants itself. Mutations are serialized on
+// the index; they are rare compared to checks. Every node keeps its own index, so each change made
+// here is published over the ClusterFanout once its transaction commits and applied by the other
+// nodes; applying a change twice leaves the same index.
+@Slf4j
+@Service
+public class AccessControlIndex {
+    public static final String ACL_CHANGED = "/cluster/acl";
+
+    // rough per-entry cost of the maps (entry, boxed key, value object), for the footprint gauge
+    private static final int DOCUMENT_ENTRY_BYTES = 96;
+    private static final int GRANT_ENTRY_BYTES = 64;
+
+    @Autowired DocumentRepository documentRepository;
+    @Autowired PermissionRepository permissionRepository;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired(required = false) ClusterFanout clusterFanout;
+
+    private final Map<Long, DocumentAcl> documents = new ConcurrentHashMap<>();
+
+    private Counter hits;
+    private Counter misses;
+
+    // one change to the index, as another node applies it; userId is the owner for CREATED
+    record AclChange(Action action, Long documentId, Long userId, AccessType accessType) {}
+
+    enum Action { CREATED, DELETED, GRANTED, REVOKED }
+
+    @PostConstruct
+    public void load() {
+        hits = Counter.builder("coedit.acl.lookups").tag("result", "hit")
+                .description("Permission checks answered for a known document").register(meterRegistry);
+        misses = Counter.builder("coedit.acl.lookups").tag("result", "miss")
+                .description("Permission checks for a document the index does not know").register(meterRegistry);
+        Gauge.builder("coedit.acl.documents", documents, Map::size).register(meterRegistry);
+        Gauge.builder("coedit.acl.memory", this, AccessControlIndex::memoryFootprintBytes)
+                .baseUnit("bytes").description("Estimated heap used by the access control index").register(meterRegistry);
+
+        // subscribed before loading, so a change committed meanwhile is applied on top of the rows
+        if (clusterFanout != null) {
+            clusterFanout.subscribe(this::receive);
+        }
+        synchronized (this) {
+            for (Object[] row : documentRepository.findAllOwnerships()) {
+                created((Long) row[0], (Long) row[1]);
+            }
+            for (Object[] row : permissionRepository.findAllGrants()) {
+                grant((Long) row[0], (Long) row[1], (AccessType) row[2]);
+            }
+        }
+        log.info("Access control index loaded: {} documents, ~{} bytes", documents.size(), memoryFootprintBytes());
+    }
+
+    public boolean canView(Long userId, Long documentId) {
+        DocumentAcl acl = lookup(documentId);
+        return acl != null && (acl.ownerId.equals(userId) || acl.grants.containsKey(userId));
+    }
+
+    public boolean canEdit(Long userId, Long documentId) {
+        DocumentAcl acl = lookup(documentId);
+        return acl != null && (acl.ownerId.equals(userId) || isEditor(acl.grants.get(userId)));
+    }
+
+    public boolean isOwner(Long userId, Long documentId) {
+        DocumentAcl acl = lookup(documentId);
+        return acl != null && acl.ownerId.equals(userId);
+    }
+
+    public void documentCreated(Long documentId, Long ownerId) {
+        apply(new AclChange(Action.CREATED, documentId, ownerId, null));
+    }
+
+    public void documentDeleted(Long documentId) {
+        apply(new AclChange(Action.DELETED, documentId, null, null));
+    }
+
+    public void granted(Long documentId, Long userId, AccessType accessType) {
+        apply(new AclChange(Action.GRANTED, documentId, userId, accessType));
+    }
+
+    public void revoked(Long documentId, Long userId) {
+        apply(new AclChange(Action.REVOKED, documentId, userId, null));
+    }
+
+    public synchronized long memoryFootprintBytes() {
+        long bytes = 0;
+        for (DocumentAcl acl : documents.values()) {
+            bytes += DOCUMENT_ENTRY_BYTES + (long) acl.grants.size() * GRANT_ENTRY_BYTES;
+        }
+        return bytes;
+    }
+
+    // Applies a change made on this node and tells the other nodes, both once it is committed: a
+    // change rolled back leaves every index as it was
+    private void apply(AclChange change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    committed(change);
+                }
+            });
+        } else {
+            committed(change);
+        }
+    }
+
+    private void committed(AclChange change) {
+        change(change);
+        if (clusterFanout != null) {
+            publish(change);
+        }
+    }
+
+    private void publish(AclChange change) {
+        try {
+            clusterFanout.publish(new ClusterFanout.Envelope(clusterFanout.nodeId(), ACL_CHANGED,
+                    "application/json", objectMapper.writeValueAsBytes(change), System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.error("Could not publish access change of document {}: {}", change.documentId(), e.getMessage());
+        }
+    }
+
+    private void receive(ClusterFanout.Envelope envelope) {
+        if (!ACL_CHANGED.equals(envelope.destination())) {
+            return;
+        }
+        try {
+            change(objectMapper.readValue(envelope.payload(), AclChange.class));
+        } catch (IOException e) {
+            log.error("Could not decode access change from node {}: {}", envelope.origin(), e.getMessage());
+        }
+    }
+
+    private synchronized void change(AclChange change) {
+        switch (change.action()) {
+            case CREATED -> created(change.documentId(), change.userId());
+            case DELETED -> deleted(change.documentId());
+            case GRANTED -> grant(change.documentId(), change.userId(), change.accessType());
+            case REVOKED -> revoke(change.documentId(), change.userId());
+        }
+    }
+
+    // Keeps the grants of a document already known, e.g. one loaded after its creation was published
+    private void created(Long documentId, Long ownerId) {
+        DocumentAcl existing = documents.get(documentId);
+        if (existing != null && existing.ownerId.equals(ownerId)) {
+            return;
+        }
+        documents.put(documentId, new DocumentAcl(ownerId));
+    }
+
+    private void deleted(Long documentId) {
+        documents.remove(documentId);
+    }
+
+    private void grant(Long documentId, Long userId, AccessType accessType) {
+        DocumentAcl acl = documents.get(documentId);
+        if (acl == null) {
+            log.warn("Ignoring grant on unknown document {}", documentId);
+            return;
+        }
+        acl.grants.put(userId, accessType);
+    }
+
+    private void revoke(Long documentId, Long userId) {
+        DocumentAcl acl = documents.get(documentId);
+        if (acl != null) {
+            acl.grants.remove(userId);
+        }
+    }
+
+    private DocumentAcl lookup(Long documentId) {
+        DocumentAcl acl = documents.get(documentId);
+        (acl == null ? misses : hits).increment();
+        return acl;
+    }
+
+    private static boolean isEditor(AccessType accessType) {
+        return accessType == AccessType.EDITOR || accessType == AccessType.OWNER;
+    }
+
+    private static final class DocumentAcl {
+        private final Long ownerId;
+        private final Map<Long, AccessType> grants = new ConcurrentHashMap<>();
+
+        private DocumentAcl(Long ownerId) {
+            this.ownerId = ownerId;
+        }
+    }
+}
@@ -17,6 +17,7 @@ public class AuthService {
     @Autowired UserRepository userRepository;
     @Autowired PasswordEncoder passwordEncoder;
     @Autowired JwtService jwtService;
+    @Autowired CurrentUserService currentUserService;
 
     private static final Pattern EMAIL_PATTERN =
             Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
@@ -50,6 +51,7 @@ public class AuthService {
         user.setPasswordHashed(passwordEncoder.encode(registerRequest.getPassword()));
         user.setRole("USER");
         User savedUser = userRepository.save(user);
+        currentUserService.evict(savedUser.getEmail());
         log.info("User saved: {}", savedUser);
         return savedUser;
     }
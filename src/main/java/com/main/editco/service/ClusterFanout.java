@@ -0,0 +1,17 @@
+package com.main.editco.service;
+
+import java.util.function.Consumer;
+
+// Carries document-topic broadcasts between app instances, so subscribers on every node see them.
+// Selected with collab.cluster.fanout: none (single node), loopback (in-JVM, for tests) or postgres.
+public interface ClusterFanout {
+    String nodeId();
+
+    // Hands a locally published broadcast to the other nodes; must not block the caller on the network
+    void publish(Envelope envelope);
+
+    // Called with broadcasts published by other nodes, never with this node's own
+    void subscribe(Consumer<Envelope> listener);
+
+    record Envelope(String origin, String destination, String contentType, byte[] payload, long sentAt) {}
+}
@@ -0,0 +1,186 @@
+package com.main.editco.service;
+
+import com.main.editco.dao.entities.ClusterMember;
+import com.main.editco.dao.repositories.ClusterMemberRepository;
+import com.main.editco.util.ConsistentHashRing;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Which nodes are up, and which of them owns each document. Every node heartbeats a row in the
+// cluster_members table and builds a consistent-hash ring over the nodes whose heartbeat is recent;
+// all nodes reading the same rows agree on every owner. Joins and graceful leaves are announced
+// over the ClusterFanout so the others re-read the table at once instead of on their next beat.
+// A RingChanged event is published whenever the ring changes. Without a fan-out (single node) the
+// ring holds only this node.
+@Slf4j
+@Service
+public class ClusterMembership {
+    public static final String MEMBERS_CHANGED = "/cluster/members";
+
+    @Autowired(required = false)
+    private ClusterFanout clusterFanout;
+    @Autowired
+    private ClusterMemberRepository clusterMemberRepository;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    @Qualifier("taskScheduler")
+    private TaskScheduler taskScheduler;
+
+    @Value("${collab.cluster.node-timeout-ms:6000}")
+    private long nodeTimeoutMs;
+    @Value("${collab.cluster.virtual-nodes:64}")
+    private int virtualNodes;
+    // how long a leaving node keeps re-forwarding edits that were already on their way to it
+    @Value("${collab.cluster.leave-grace-ms:500}")
+    private long leaveGraceMs;
+
+    private volatile ConsistentHashRing ring;
+    private volatile boolean joined;
+    private volatile boolean leaving;
+    private Instant startedAt;
+
+    public record RingChanged(ConsistentHashRing previous, ConsistentHashRing current) {}
+
+    @PostConstruct
+    public void start() {
+        if (clusterFanout == null) {
+            ring = new ConsistentHashRing(List.of(nodeId()), 1);
+            return;
+        }
+        startedAt = Instant.now();
+        ring = new ConsistentHashRing(List.of(), virtualNodes);
+        clusterFanout.subscribe(envelope -> {
+            if (MEMBERS_CHANGED.equals(envelope.destination())) {
+                // not on the fan-out's delivery thread: ring listeners wait for documents to be released
+                taskScheduler.schedule(this::refresh, Instant.now());
+            }
+        });
+        refresh();
+    }
+
+    // The row goes in only once every listener is subscribed to the fan-out, so no answer to the
+    // announcement is missed; until then this node routes by the ring it read at startup
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        if (clusterFanout == null) {
+            return;
+        }
+        joined = true;
+        heartbeat();
+        announce();
+        log.info("Node {} joined the cluster, ring is now {}", nodeId(), ring);
+    }
+
+    public String nodeId() {
+        return clusterFanout != null ? clusterFanout.nodeId() : "local";
+    }
+
+    public boolean isClustered() {
+        return clusterFanout != null;
+    }
+
+    public ConsistentHashRing ring() {
+        return ring;
+    }
+
+    public String owner(Long documentId) {
+        return ring.owner(documentId);
+    }
+
+    public boolean owns(Long documentId) {
+        return nodeId().equals(owner(documentId));
+    }
+
+    @Scheduled(fixedDelayString = "${collab.cluster.heartbeat-ms:2000}")
+    public synchronized void heartbeat() {
+        if (clusterFanout == null || !joined || leaving) {
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            if (clusterMemberRepository.touch(nodeId(), now) == 0) {
+                clusterMemberRepository.save(new ClusterMember(nodeId(), startedAt, now));
+            }
+            clusterMemberRepository.deleteDeadBefore(now.minusMillis(nodeTimeoutMs));
+        } catch (DataAccessException e) {
+            log.warn("Could not record heartbeat of node {}: {}", nodeId(), e.getMessage());
+        }
+        refresh();
+    }
+
+    // Rebuilds the ring from the live rows; this node always counts itself while it is not leaving
+    public synchronized void refresh() {
+        if (clusterFanout == null || leaving) {
+            return;
+        }
+        Set<String> nodes;
+        try {
+            nodes = new TreeSet<>(clusterMemberRepository.findNodeIdsAliveSince(Instant.now().minusMillis(nodeTimeoutMs)));
+        } catch (DataAccessException e) {
+            log.warn("Could not read cluster members: {}", e.getMessage());
+            return;
+        }
+        nodes.add(nodeId());
+        changeTo(nodes);
+    }
+
+    // Hands this node's documents over before the rest of the cluster routes around it: the ring
+    // without this node is applied locally first (releasing every open document), then the row is
+    // removed and the others are told to re-read the table.
+    @EventListener(ContextClosedEvent.class)
+    public synchronized void leave() {
+        if (clusterFanout == null || leaving) {
+            return;
+        }
+        Set<String> others = new TreeSet<>(ring.nodes());
+        others.remove(nodeId());
+        changeTo(others);
+        leaving = true;
+        try {
+            clusterMemberRepository.deleteById(nodeId());
+        } catch (DataAccessException e) {
+            log.warn("Could not remove node {} from cluster members: {}", nodeId(), e.getMessage());
+        }
+        announce();
+        log.info("Node {} left the cluster", nodeId());
+        try {
+            Thread.sleep(leaveGraceMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void changeTo(Set<String> nodes) {
+        ConsistentHashRing previous = ring;
+        if (nodes.equals(previous.nodes())) {
+            return;
+        }
+        ring = new ConsistentHashRing(nodes, virtualNodes);
+        if (!previous.nodes().isEmpty()) {
+            log.info("Cluster ring changed from {} to {}", previous, ring);
+            eventPublisher.publishEvent(new RingChanged(previous, ring));
+        }
+    }
+
+    private void announce() {
+        clusterFanout.publish(new ClusterFanout.Envelope(nodeId(), MEMBERS_CHANGED, null, new byte[0],
+                System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,52 @@
+package com.main.editco.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.main.editco.dao.entities.User;
+import com.main.editco.dao.repositories.UserRepository;
+import com.main.editco.dto.CurrentUser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+// Small email -> CurrentUser cache so authenticated requests resolve their user without a query.
+// Anything that changes a user must call evict.
+@Service
+public class CurrentUserService {
+    @Autowired UserRepository userRepository;
+    @Autowired MeterRegistry meterRegistry;
+
+    @Value("${security.user-cache.maximum-size:10000}")
+    private long maximumSize;
+    @Value("${security.user-cache.expire-after-ms:600000}")
+    private long expireAfterMs;
+
+    private Cache<String, CurrentUser> users;
+
+    @PostConstruct
+    public void init() {
+        users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    // null when no such user exists; misses are not cached so a later signup is seen immediately
+    public CurrentUser findByEmail(String email) {
+        return users.get(email, key -> {
+            User user = userRepository.findByEmail(key);
+            return user == null ? null : new CurrentUser(user.getId(), user.getEmail(), user.getName());
+        });
+    }
+
+    public void evict(String email) {
+        users.invalidate(email);
+    }
+}
@@ -0,0 +1,59 @@
+package com.main.editco.service;
+
+import com.main.editco.dto.CursorBatchMessage;
+import com.main.editco.dto.CursorPositionMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Conflates cursor moves to the latest position per session and publishes one batch per document
+// per tick, so outbound cursor traffic is bounded by active documents x tick rate.
+@Service
+public class CursorAggregator {
+    @Autowired SimpMessagingTemplate messagingTemplate;
+    @Autowired MeterRegistry meterRegistry;
+
+    // per document, latest cursor per session; the inner map is only touched inside compute/remove
+    private final Map<Long, Map<String, CursorPositionMessage>> pending = new ConcurrentHashMap<>();
+
+    private Counter received;
+    private Counter published;
+
+    @PostConstruct
+    public void init() {
+        received = meterRegistry.counter("coedit.cursors.received");
+        published = meterRegistry.counter("coedit.cursors.batches");
+    }
+
+    public void submit(Long documentId, CursorPositionMessage cursor) {
+        received.increment();
+        pending.compute(documentId, (id, latest) -> {
+            Map<String, CursorPositionMessage> cursors = latest == null ? new HashMap<>() : latest;
+            cursors.put(cursor.getSessionId(), cursor);
+            return cursors;
+        });
+    }
+
+    // Documents with no moves since the last tick have no entry, so quiet ticks send nothing
+    @Scheduled(fixedRateString = "${collab.cursor.tick-ms:40}")
+    public void tick() {
+        for (Long documentId : pending.keySet()) {
+            Map<String, CursorPositionMessage> cursors = pending.remove(documentId);
+            if (cursors == null || cursors.isEmpty()) {
+                continue;
+            }
+            messagingTemplate.convertAndSend(DocumentTopics.topic(documentId, DocumentTopics.CURSORS),
+                    new CursorBatchMessage(documentId, new ArrayList<>(cursors.values()), System.currentTimeMillis()));
+            published.increment();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.main.editco.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.editco.config.DocumentLaneExecutor;
+import com.main.editco.dto.DocumentCatchUpMessage;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.DocumentVersion;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Keeps each active document's session on exactly one node, the ring owner from ClusterMembership.
+// Edits and catch-up requests that arrive on any other node are forwarded to the owner over the
+// ClusterFanout and handled there on the document's lane; the owner's broadcast reaches every node
+// through the usual relay, while catch-ups and rejections travel back to the sender's user queue.
+// REST title and content writes take the same way, their caller waiting for the owner's answer, so
+// only the owner's session ever writes a document's row. When the ring changes, a node releases
+// (flushes and closes) the sessions it no longer owns and then confirms the new ring; a node that
+// gained a document waits for every other member's confirmation before opening it, so two sessions
+// of one document never take edits at once. A node that crashed never confirms, the wait times out
+// and the journal replay on open picks up what it had not flushed. Work on an owned session holds
+// the read side of a lock whose write side covers the release, so nothing reopens a session
+// between the ownership check and its use; waiting for confirmations happens outside that lock.
+@Slf4j
+@Service
+public class DocumentAffinityRouter {
+    private static final String HANDOFF = "/cluster/handoff";
+    private static final String NODE_PREFIX = "/cluster/node/";
+    private static final String REQUEST = "/request";
+    private static final String REPLY = "/reply";
+    private static final String WRITTEN = "/written";
+    // a forwarded edit chasing an owner that keeps moving gives up after this many hops
+    private static final int MAX_HOPS = 8;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+    @Autowired(required = false)
+    private ClusterFanout clusterFanout;
+    @Autowired
+    private DocumentSessionService documentSessionService;
+    @Autowired
+    private DocumentLaneExecutor documentLaneExecutor;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Lazy
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    @Qualifier("taskScheduler")
+    private TaskScheduler taskScheduler;
+
+    @Value("${collab.cluster.handoff-timeout-ms:3000}")
+    private long handoffTimeoutMs;
+    @Value("${collab.cluster.reroute-delay-ms:100}")
+    private long rerouteDelayMs;
+    @Value("${collab.cluster.write-timeout-ms:5000}")
+    private long writeTimeoutMs;
+
+    // node id -> ring (as its node list) that node has released everything it does not own in
+    private final Map<String, String> confirmed = new ConcurrentHashMap<>();
+    // ring this node already saw confirmed by everybody, so later opens skip the wait
+    private volatile String settled;
+    private final ReadWriteLock ownership = new ReentrantReadWriteLock();
+    // request id -> REST write forwarded from here, waiting for the owner's answer
+    private final Map<String, CompletableFuture<WriteReply>> pendingWrites = new ConcurrentHashMap<>();
+
+    // an edit to apply, a REST write, or a catch-up from catchUpFrom when both are null
+    record ForwardedRequest(Long documentId, String origin, String user, String sessionId, int hops,
+                            DocumentEditMessage edit, Long catchUpFrom, ForwardedWrite write) {
+        ForwardedRequest nextHop() {
+            return new ForwardedRequest(documentId, origin, user, sessionId, hops + 1, edit, catchUpFrom, write);
+        }
+    }
+
+    record ForwardedReply(String user, String sessionId, String destination, Object payload) {}
+
+    record ForwardedWrite(String requestId, String title, String content, boolean partial, String ifMatch) {}
+
+    // version is null when the document does not exist; error names the rejection, as on /queue/errors
+    record WriteReply(String requestId, DocumentVersion version, String error, String message) {}
+
+    @PostConstruct
+    public void init() {
+        if (clusterFanout != null) {
+            clusterFanout.subscribe(this::receive);
+        }
+    }
+
+    public boolean owns(Long documentId) {
+        return clusterMembership.owns(documentId);
+    }
+
+    // Applies the edit here when this node owns the document and returns the broadcast; otherwise
+    // forwards it to the owner and returns null, the owner broadcasts it
+    public DocumentEditMessage applyOrForward(Long documentId, DocumentEditMessage message, String user) {
+        DocumentEditMessage applied = whileOwner(documentId, () -> documentSessionService.applyEdit(documentId, message));
+        if (applied == null) {
+            forward(clusterMembership.owner(documentId),
+                    new ForwardedRequest(documentId, clusterMembership.nodeId(), user, message.getSessionId(), 0, message, null, null));
+        }
+        return applied;
+    }
+
+    // Same for a reconnecting client's catch-up; a forwarded one is answered on the sender's /queue/resync
+    public DocumentCatchUpMessage catchUpOrForward(Long documentId, long revision, String user, String sessionId) {
+        DocumentCatchUpMessage catchUp = whileOwner(documentId, () -> documentSessionService.catchUp(documentId, revision));
+        if (catchUp == null) {
+            forward(clusterMembership.owner(documentId),
+                    new ForwardedRequest(documentId, clusterMembership.nodeId(), user, sessionId, 0, null, revision, null));
+        }
+        return catchUp;
+    }
+
+    // A REST write (see DocumentSessionService.write), applied by the owner's session wherever it
+    // arrived; blocks until the owner answered
+    public Optional<DocumentVersion> writeOrForward(Long documentId, String title, String content, boolean partial,
+                                                    String ifMatch) {
+        Optional<DocumentVersion> written = whileOwner(documentId,
+                () -> documentSessionService.write(documentId, title, content, partial, ifMatch));
+        if (written != null) {
+            return written;
+        }
+        String requestId = UUID.randomUUID().toString();
+        CompletableFuture<WriteReply> answer = new CompletableFuture<>();
+        pendingWrites.put(requestId, answer);
+        try {
+            forward(clusterMembership.owner(documentId), new ForwardedRequest(documentId, clusterMembership.nodeId(),
+                    null, null, 0, null, null, new ForwardedWrite(requestId, title, content, partial, ifMatch)));
+            WriteReply reply = answer.get(writeTimeoutMs, TimeUnit.MILLISECONDS);
+            if (reply.error() == null) {
+                return Optional.ofNullable(reply.version());
+            }
+            switch (reply.error()) {
+                case "Precondition Failed" -> throw new PreconditionFailedException(reply.message());
+                case "Bad Request" -> throw new IllegalArgumentException(reply.message());
+                default -> throw new IllegalStateException(reply.message());
+            }
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Owner of document " + documentId + " did not answer within " + writeTimeoutMs + " ms");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Write of document " + documentId + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing document " + documentId);
+        } finally {
+            pendingWrites.remove(requestId);
+        }
+    }
+
+    // Counts a reader of the document's updates towards its session, on the owner only
+    public void join(Long documentId, String sessionId, String subscriptionId) {
+        whileOwner(documentId, () -> {
+            documentSessionService.join(documentId, sessionId, subscriptionId);
+            return Boolean.TRUE;
+        });
+    }
+
+    // Runs action if this node owns the document under a ring the other nodes have handed off for;
+    // returns null without running it otherwise
+    private <T> T whileOwner(Long documentId, Supplier<T> action) {
+        while (owns(documentId)) {
+            String ring = awaitHandoff();
+            ownership.readLock().lock();
+            try {
+                if (owns(documentId) && ring.equals(clusterMembership.ring().toString())) {
+                    return action.get();
+                }
+            } finally {
+                ownership.readLock().unlock();
+            }
+        }
+        return null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void confirmInitialRing() {
+        if (clusterFanout != null) {
+            confirm(clusterMembership.ring().toString());
+        }
+    }
+
+    // Releases every open document this node lost, then tells the others it is done
+    @EventListener
+    public void onRingChanged(ClusterMembership.RingChanged event) {
+        settled = null;
+        int released = 0;
+        ownership.writeLock().lock();
+        try {
+            for (Long documentId : documentSessionService.openDocuments()) {
+                if (!clusterMembership.nodeId().equals(event.current().owner(documentId))) {
+                    try {
+                        documentSessionService.release(documentId);
+                        released++;
+                    } catch (RuntimeException e) {
+                        log.error("Failed to release document {}: {}", documentId, e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            ownership.writeLock().unlock();
+        }
+        log.info("Released {} documents for ring {}", released, event.current());
+        confirm(event.current().toString());
+    }
+
+    private void confirm(String ring) {
+        confirmed.put(clusterMembership.nodeId(), ring);
+        clusterFanout.publish(new ClusterFanout.Envelope(clusterMembership.nodeId(), HANDOFF, null,
+                ring.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis()));
+        signal();
+    }
+
+    // Blocks until every other node of the current ring released what it no longer owns, or the
+    // timeout; returns the ring waited for
+    private String awaitHandoff() {
+        String ring = clusterMembership.ring().toString();
+        if (clusterFanout == null || ring.equals(settled)) {
+            return ring;
+        }
+        long deadline = System.currentTimeMillis() + handoffTimeoutMs;
+        synchronized (confirmed) {
+            while (!handedOff(ring)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.warn("Not every node confirmed ring {} within {} ms, opening documents anyway", ring, handoffTimeoutMs);
+                    break;
+                }
+                try {
+                    confirmed.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return ring;
+                }
+                ring = clusterMembership.ring().toString();
+            }
+        }
+        settled = ring;
+        return ring;
+    }
+
+    private boolean handedOff(String ring) {
+        return clusterMembership.ring().nodes().stream()
+                .allMatch(node -> node.equals(clusterMembership.nodeId()) || ring.equals(confirmed.get(node)));
+    }
+
+    private void signal() {
+        synchronized (confirmed) {
+            confirmed.notifyAll();
+        }
+    }
+
+    private void receive(ClusterFanout.Envelope envelope) {
+        String destination = envelope.destination();
+        if (HANDOFF.equals(destination)) {
+            confirmed.put(envelope.origin(), new String(envelope.payload(), StandardCharsets.UTF_8));
+            signal();
+            return;
+        }
+        String prefix = NODE_PREFIX + clusterMembership.nodeId();
+        if (destination.equals(prefix + REQUEST)) {
+            ForwardedRequest forwarded = read(envelope, ForwardedRequest.class);
+            documentLaneExecutor.execute(forwarded.documentId(), () -> handleForwarded(forwarded, false));
+        } else if (destination.equals(prefix + REPLY)) {
+            deliver(read(envelope, ForwardedReply.class));
+        } else if (destination.equals(prefix + WRITTEN)) {
+            complete(read(envelope, WriteReply.class));
+        }
+    }
+
+    private void handleForwarded(ForwardedRequest forwarded, boolean delayed) {
+        Long documentId = forwarded.documentId();
+        String owner = clusterMembership.owner(documentId);
+        if (!clusterMembership.nodeId().equals(owner)) {
+            if (forwarded.hops() >= MAX_HOPS) {
+                sendError(forwarded, "Resync Required", "Document " + documentId + " is moving between nodes, resync required");
+            } else if (forwarded.hops() > 0 && !delayed) {
+                // forwarded here by a node with another ring; give this node's ring a moment to catch
+                // up instead of bouncing the edit straight back
+                taskScheduler.schedule(() -> documentLaneExecutor.execute(documentId, () -> handleForwarded(forwarded, true)),
+                        Instant.now().plusMillis(rerouteDelayMs));
+            } else {
+                forward(owner, forwarded.nextHop());
+            }
+            return;
+        }
+        try {
+            Object result = whileOwner(documentId, () -> forwarded.edit() != null
+                    ? documentSessionService.applyEdit(documentId, forwarded.edit())
+                    : forwarded.write() != null ? write(documentId, forwarded.write())
+                    : documentSessionService.catchUp(documentId, forwarded.catchUpFrom()));
+            if (result == null) {
+                // the ring moved while waiting for the handoff
+                handleForwarded(forwarded, false);
+            } else if (result instanceof DocumentEditMessage applied) {
+                messagingTemplate.convertAndSend(DocumentTopics.topic(documentId, DocumentTopics.UPDATES), applied);
+            } else if (result instanceof WriteReply written) {
+                answer(forwarded, written);
+            } else {
+                reply(forwarded, new ForwardedReply(forwarded.user(), forwarded.sessionId(), "/queue/resync", result));
+            }
+        } catch (PreconditionFailedException e) {
+            sendError(forwarded, "Precondition Failed", e.getMessage());
+        } catch (IllegalStateException e) {
+            sendError(forwarded, "Resync Required", e.getMessage());
+        } catch (IllegalArgumentException e) {
+            sendError(forwarded, "Bad Request", e.getMessage());
+        }
+    }
+
+    private WriteReply write(Long documentId, ForwardedWrite write) {
+        DocumentVersion version = documentSessionService.write(documentId, write.title(), write.content(),
+                write.partial(), write.ifMatch()).orElse(null);
+        return new WriteReply(write.requestId(), version, null, null);
+    }
+
+    private void forward(String owner, ForwardedRequest forwarded) {
+        log.trace("Forwarding request for document {} to node {}", forwarded.documentId(), owner);
+        publish(NODE_PREFIX + owner + REQUEST, forwarded);
+    }
+
+    // Same shape and queue as WebSocketController's handler
+    private void sendError(ForwardedRequest forwarded, String error, String message) {
+        log.warn("Rejected forwarded request from session {}: {}", forwarded.sessionId(), message);
+        if (forwarded.write() != null) {
+            answer(forwarded, new WriteReply(forwarded.write().requestId(), null, error, Objects.toString(message, "")));
+            return;
+        }
+        reply(forwarded, new ForwardedReply(forwarded.user(), forwarded.sessionId(), "/queue/errors", Map.of(
+                "timestamp", Instant.now().toString(),
+                "error", error,
+                "message", Objects.toString(message, ""))));
+    }
+
+    private void reply(ForwardedRequest forwarded, ForwardedReply reply) {
+        if (clusterMembership.nodeId().equals(forwarded.origin())) {
+            deliver(reply);
+        } else {
+            publish(NODE_PREFIX + forwarded.origin() + REPLY, reply);
+        }
+    }
+
+    private void answer(ForwardedRequest forwarded, WriteReply reply) {
+        if (clusterMembership.nodeId().equals(forwarded.origin())) {
+            complete(reply);
+        } else {
+            publish(NODE_PREFIX + forwarded.origin() + WRITTEN, reply);
+        }
+    }
+
+    private void complete(WriteReply reply) {
+        CompletableFuture<WriteReply> answer = pendingWrites.get(reply.requestId());
+        if (answer != null) {
+            answer.complete(reply);
+        }
+    }
+
+    // Addressed to the sending session only, like @SendToUser(broadcast = false)
+    private void deliver(ForwardedReply reply) {
+        if (reply.user() == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(reply.sessionId());
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(reply.user(), reply.destination(), reply.payload(), headers.getMessageHeaders());
+    }
+
+    private void publish(String destination, Object payload) {
+        try {
+            clusterFanout.publish(new ClusterFanout.Envelope(clusterMembership.nodeId(), destination,
+                    "application/json", objectMapper.writeValueAsBytes(payload), System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode message for " + destination, e);
+        }
+    }
+
+    private <T> T read(ClusterFanout.Envelope envelope, Class<T> type) {
+        try {
+            return objectMapper.readValue(envelope.payload(), type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not decode message for " + envelope.destination(), e);
+        }
+    }
+}
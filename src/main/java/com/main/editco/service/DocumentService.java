@@ -5,10 +5,21 @@ import com.main.editco.dao.repositories.CommentRepository;
 import com.main.editco.dao.repositories.DocumentRepository;
 import com.main.editco.dao.repositories.PermissionRepository;
 import com.main.editco.dao.repositories.VersionHistoryRepository;
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.DocumentSummary;
+import com.main.editco.dto.DocumentVersion;
+import com.main.editco.dto.KeysetCursor;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Optional;
@@ -16,44 +27,130 @@ import java.util.Optional;
 @Slf4j
 @Service
 public class DocumentService {
+    private static final int DELETE_BATCH_SIZE = 500;
+
     @Autowired DocumentRepository documentRepository;
     @Autowired CommentRepository commentRepository;
     @Autowired PermissionRepository permissionRepository;
     @Autowired VersionHistoryRepository versionHistoryRepository;
+    @Autowired DocumentSessionService documentSessionService;
+    @Autowired EditJournalService editJournalService;
+    @Autowired AccessControlIndex accessControlIndex;
+    @Autowired DocumentAffinityRouter documentAffinityRouter;
+    @Autowired SimpMessagingTemplate messagingTemplate;
 
+    @EventListener(ApplicationReadyEvent.class)
+    public void fillMissingPreviews() {
+        int filled = documentRepository.fillMissingPreviews();
+        if (filled > 0) {
+            log.info("Filled in the preview of {} documents", filled);
+        }
+    }
     @Transactional(readOnly=true)
-    public List<Document> getAllDocuments(){
-        log.debug("Fetching all documents");
-        return documentRepository.findAll();
+    public List<DocumentSummary> getAccessibleDocuments(Long userId, KeysetCursor before, int limit) {
+        log.debug("Fetching documents accessible to user {}", userId);
+        PageRequest page = PageRequest.of(0, limit);
+        if (before == null) {
+            return documentRepository.findAccessible(userId, page);
+        }
+        return documentRepository.findAccessibleBefore(userId, before.timestamp(), before.id(), page);
     }
     @Transactional(readOnly=true)
     public Optional<Document> getDocumentById(Long id) {
         log.debug("Fetching document by id {}", id);
+        Optional<Document> live = documentSessionService.snapshot(id);
+        if (live.isPresent()) {
+            return live;
+        }
         return documentRepository.findById(id);
     }
     @Transactional(readOnly=true)
-    public List<Document> getDocumentsByOwnerId(Long ownerId){
+    public List<DocumentSummary> getDocumentsByOwnerId(Long ownerId, KeysetCursor before, int limit){
         log.debug("Fetching documents by owner id {}", ownerId);
-        return documentRepository.findByOwnerId(ownerId);
+        PageRequest page = PageRequest.of(0, limit);
+        if (before == null) {
+            return documentRepository.findOwned(ownerId, page);
+        }
+        return documentRepository.findOwnedBefore(ownerId, before.timestamp(), before.id(), page);
     }
     @Transactional
     public Document createDocument(Document document) {
         document.setCreatedAt(java.time.Instant.now());
         document.setUpdatedAt(java.time.Instant.now());
-        return documentRepository.save(document);
+        Document saved = documentRepository.save(document);
+        accessControlIndex.documentCreated(saved.getId(), saved.getOwner().getId());
+        return saved;
     }
-    @Transactional
-    public Optional<Document> updateDocument(Long id, Document updatedDoc) {
-        return documentRepository.findById(id).map(existing -> {
-            existing.setTitle(updatedDoc.getTitle());
-            existing.setContent(updatedDoc.getContent());
-            existing.setUpdatedAt(java.time.Instant.now());
-            return documentRepository.save(existing);
+    // Live sessions answer from memory, everything else from the version column alone
+    @Transactional(readOnly=true)
+    public Optional<DocumentVersion> getDocumentVersion(Long id) {
+        Optional<DocumentVersion> live = documentSessionService.version(id);
+        if (live.isPresent()) {
+            return live;
+        }
+        return documentRepository.findVersionById(id);
+    }
+    // Title and content are only ever written by the document's session on its owner node, wherever
+    // the request arrived, so a write here can never be overwritten by that session's next flush
+    public Optional<Document> updateDocument(Long id, Document updatedDoc, String ifMatch) {
+        String content = updatedDoc.getContent() == null ? "" : updatedDoc.getContent();
+        return documentAffinityRouter.writeOrForward(id, updatedDoc.getTitle(), content, false, ifMatch)
+                .flatMap(version -> written(id, updatedDoc.getTitle(), content, version));
+    }
+    // Partial update: a null title or content is left as it is, so a rename never carries the content
+    public Optional<DocumentVersion> patchDocument(Long id, String title, String content, String ifMatch) {
+        return documentAffinityRouter.writeOrForward(id, title, content, true, ifMatch);
+    }
+    // A content delta is an edit like one sent over the websocket: transformed against what happened
+    // since its baseRevision and broadcast to every reader. Returns null when another node owns the
+    // document; it is applied and broadcast there, errors go to the user's open sessions.
+    public DocumentEditMessage applyDelta(Long id, DocumentEditMessage delta, CurrentUser currentUser) {
+        delta.setEmail(currentUser.email());
+        delta.setTimestamp(System.currentTimeMillis());
+        DocumentEditMessage applied;
+        try {
+            applied = documentAffinityRouter.applyOrForward(id, delta, currentUser.getName());
+        } catch (IllegalStateException e) {
+            throw new PreconditionFailedException(e.getMessage());
+        }
+        if (applied != null) {
+            messagingTemplate.convertAndSend(DocumentTopics.topic(id, DocumentTopics.UPDATES), applied);
+        }
+        return applied;
+    }
+    public Document restoreContent(Document document, String content) {
+        return documentAffinityRouter.writeOrForward(document.getId(), document.getTitle(), content, false, null)
+                .flatMap(version -> written(document.getId(), document.getTitle(), content, version))
+                .orElseThrow(() -> new IllegalArgumentException("Document " + document.getId() + " not found"));
+    }
+    // The document as a write left it, from the row's metadata and what was written, so the owner
+    // never has to send the content back
+    private Optional<Document> written(Long id, String title, String content, DocumentVersion version) {
+        return documentRepository.findById(id).map(row -> {
+            Document document = new Document();
+            document.setId(id);
+            document.setOwner(row.getOwner());
+            document.setCreatedAt(row.getCreatedAt());
+            document.setUpdatedAt(java.time.Instant.now());
+            document.setTitle(title);
+            document.setContent(content);
+            document.setVersion(version.version());
+            document.setSnapshotSequence(version.revision());
+            return document;
         });
     }
     @Transactional
     public boolean deleteDocument(Long id) {
         if (documentRepository.existsById(id)){
+            // both indexes change once the deletion commits; the live session goes then too
+            accessControlIndex.documentDeleted(id);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    documentSessionService.discard(id);
+                }
+            });
+            editJournalService.deleteByDocument(id);
             // Delete all related entities first to avoid foreign key constraint violations
             log.debug("Deleting comments for document {}", id);
             commentRepository.findByDocumentId(id).forEach(comment -> 
@@ -64,8 +161,13 @@ public class DocumentService {
                 permissionRepository.deleteById(permission.getId()));
             
             log.debug("Deleting version history for document {}", id);
-            versionHistoryRepository.findByDocumentIdOrderByTimestampDesc(id).forEach(version -> 
-                versionHistoryRepository.deleteById(version.getId()));
+            // in id pages, so a long history is never loaded as entities (deltas and keyframes included)
+            List<Long> versionIds = versionHistoryRepository.findIdsAfter(id, 0L, PageRequest.of(0, DELETE_BATCH_SIZE));
+            while (!versionIds.isEmpty()) {
+                versionHistoryRepository.deleteAllByIdInBatch(versionIds);
+                versionIds = versionHistoryRepository.findIdsAfter(id, versionIds.get(versionIds.size() - 1),
+                        PageRequest.of(0, DELETE_BATCH_SIZE));
+            }
             
             log.debug("Deleting document {}", id);
             documentRepository.deleteById(id);
@@ -0,0 +1,171 @@
+package com.main.editco.service;
+
+import com.main.editco.dao.entities.Document;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.DocumentVersion;
+import com.main.editco.util.Rope;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+// Authoritative in-memory state of a document while at least one client is connected to it.
+// All mutators must be called while holding the session's monitor.
+public class DocumentSession {
+    private final Long documentId;
+    private final Document metadata;
+    private final Set<String> connectedSessions = new HashSet<>();
+    private final Object flushMonitor = new Object();
+    private String title;
+    private final Rope content;
+    private Instant updatedAt;
+    private long revision;
+    private long changeCount;
+    private long flushedChangeCount;
+    private long flushedRevision;
+    // the row's version when last read or written, and the live one: the version the next flush
+    // writes, one past the row's as soon as anything changed, and bumped again by every title edit
+    private long rowVersion;
+    private long version;
+    private boolean closed;
+
+    DocumentSession(Document document) {
+        this.documentId = document.getId();
+        this.metadata = document;
+        this.title = document.getTitle();
+        this.content = new Rope(document.getContent() == null ? "" : document.getContent());
+        this.updatedAt = document.getUpdatedAt();
+        this.flushedRevision = document.getSnapshotSequence() == null ? 0L : document.getSnapshotSequence();
+        this.rowVersion = document.getVersion();
+        this.version = document.getVersion();
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getContent() {
+        return content.toString();
+    }
+
+    public int length() {
+        return content.length();
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    void apply(DocumentEditMessage operation) {
+        content.replace(operation.getCursorPosition(), operation.getLength(), operation.getChangeContent());
+        revision = operation.getRevision();
+        touch();
+    }
+
+    Rope content() {
+        return content;
+    }
+
+    // Called once after journaled edits were replayed onto the content loaded from the database
+    void restored(long revision, boolean replayed) {
+        this.revision = revision;
+        if (replayed) {
+            touch();
+        }
+    }
+
+    void setTitle(String title) {
+        this.title = title;
+        version++;
+        touch();
+    }
+
+    boolean isDirty() {
+        return changeCount != flushedChangeCount;
+    }
+
+    long pendingChanges() {
+        return changeCount - flushedChangeCount;
+    }
+
+    long getChangeCount() {
+        return changeCount;
+    }
+
+    // False while only the title changed since the last flush, which then leaves the content column alone
+    boolean isContentDirty() {
+        return revision != flushedRevision;
+    }
+
+    long getRowVersion() {
+        return rowVersion;
+    }
+
+    void markFlushed(long changeCount, long revision, long version) {
+        this.flushedChangeCount = Math.max(flushedChangeCount, changeCount);
+        this.flushedRevision = Math.max(flushedRevision, revision);
+        this.rowVersion = Math.max(rowVersion, version);
+        // edits that came in while the flush ran go out with the next version
+        if (isDirty() && this.version == rowVersion) {
+            this.version++;
+        }
+    }
+
+    boolean connect(String sessionId) {
+        return connectedSessions.add(sessionId);
+    }
+
+    boolean disconnect(String sessionId) {
+        connectedSessions.remove(sessionId);
+        return connectedSessions.isEmpty();
+    }
+
+    int connectedCount() {
+        return connectedSessions.size();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    Object flushMonitor() {
+        return flushMonitor;
+    }
+
+    // Detached copy carrying the live title and content, safe to serialize or hand to callers
+    Document toDocument() {
+        Document document = new Document();
+        document.setId(documentId);
+        document.setOwner(metadata.getOwner());
+        document.setCreatedAt(metadata.getCreatedAt());
+        document.setTitle(title);
+        document.setContent(content.toString());
+        document.setUpdatedAt(updatedAt);
+        document.setSnapshotSequence(revision);
+        document.setVersion(version);
+        return document;
+    }
+
+    // Title edits count in the version and content edits in the revision, so the tag changes with
+    // either; a flush writes the version the tag already carries, leaving the tag alone
+    DocumentVersion version() {
+        return new DocumentVersion(version, revision);
+    }
+
+    // Every write of the row moves its version on, so a stale writer's where-clause cannot match
+    private void touch() {
+        updatedAt = Instant.now();
+        changeCount++;
+        if (version == rowVersion) {
+            version++;
+        }
+    }
+}
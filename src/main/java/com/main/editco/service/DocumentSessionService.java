@@ -0,0 +1,432 @@
+package com.main.editco.service;
+
+import com.main.editco.config.SlowConsumerGuard;
+import com.main.editco.dao.entities.Document;
+import com.main.editco.dao.repositories.DocumentRepository;
+import com.main.editco.dto.DocumentCatchUpMessage;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.DocumentVersion;
+import com.main.editco.util.ETags;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+public class DocumentSessionService {
+    @Autowired DocumentRepository documentRepository;
+    @Autowired OperationalTransformService operationalTransformService;
+    @Autowired EditJournalService editJournalService;
+    @Autowired SimpMessagingTemplate messagingTemplate;
+    @Autowired @Qualifier("taskScheduler") TaskScheduler taskScheduler;
+    @Autowired ClusterMembership clusterMembership;
+
+    @Value("${collab.session.flush-threshold:200}")
+    private long flushThreshold;
+    @Value("${collab.journal.prune-on-flush:true}")
+    private boolean pruneOnFlush;
+
+    private final Map<Long, DocumentSession> sessions = new ConcurrentHashMap<>();
+    // websocket session id -> (subscription id -> document id)
+    private final Map<String, Map<String, Long>> subscriptions = new ConcurrentHashMap<>();
+
+    public void join(Long documentId, String sessionId, String subscriptionId) {
+        while (true) {
+            DocumentSession session = open(documentId);
+            if (session == null) {
+                log.debug("Ignoring subscription of {} to unknown document {}", sessionId, documentId);
+                return;
+            }
+            synchronized (session) {
+                if (session.isClosed()) {
+                    continue;
+                }
+                session.connect(sessionId);
+            }
+            subscriptions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>()).put(subscriptionId, documentId);
+            log.debug("Session {} joined document {}", sessionId, documentId);
+            return;
+        }
+    }
+
+    public void unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, Long> sessionSubscriptions = subscriptions.get(sessionId);
+        if (sessionSubscriptions == null) {
+            return;
+        }
+        Long documentId = sessionSubscriptions.remove(subscriptionId);
+        if (documentId != null && !sessionSubscriptions.containsValue(documentId)) {
+            leave(documentId, sessionId);
+        }
+    }
+
+    public void disconnect(String sessionId) {
+        Map<String, Long> sessionSubscriptions = subscriptions.remove(sessionId);
+        if (sessionSubscriptions != null) {
+            sessionSubscriptions.values().stream().distinct().forEach(documentId -> leave(documentId, sessionId));
+        }
+    }
+
+    public DocumentEditMessage applyEdit(Long documentId, DocumentEditMessage message) {
+        while (true) {
+            DocumentSession session = open(documentId);
+            if (session == null) {
+                throw new IllegalArgumentException("Document " + documentId + " not found");
+            }
+            DocumentEditMessage transformed;
+            synchronized (session) {
+                if (session.isClosed()) {
+                    continue;
+                }
+                transformed = operationalTransformService.apply(documentId, message, session.length());
+                session.apply(transformed);
+                editJournalService.record(documentId, transformed);
+                if (session.pendingChanges() == flushThreshold) {
+                    taskScheduler.schedule(() -> flush(session), Instant.now());
+                }
+            }
+            return transformed;
+        }
+    }
+
+    // What a client that last saw revision is missing: the operations since then while the revision
+    // log still holds them, otherwise the whole document at its current revision
+    public DocumentCatchUpMessage catchUp(Long documentId, long revision) {
+        while (true) {
+            DocumentSession session = open(documentId);
+            if (session == null) {
+                throw new IllegalArgumentException("Document " + documentId + " not found");
+            }
+            synchronized (session) {
+                if (session.isClosed()) {
+                    continue;
+                }
+                DocumentCatchUpMessage catchUp = new DocumentCatchUpMessage();
+                catchUp.setDocumentId(documentId);
+                catchUp.setFromRevision(revision);
+                catchUp.setRevision(session.getRevision());
+                Optional<List<DocumentEditMessage>> missing = operationalTransformService.since(documentId, revision);
+                if (missing.isPresent()) {
+                    catchUp.setOperations(missing.get());
+                } else {
+                    catchUp.setTitle(session.getTitle());
+                    catchUp.setContent(session.getContent());
+                }
+                return catchUp;
+            }
+        }
+    }
+
+    // Applies a REST write to the document's session, opening it if needed, and flushes it, so the
+    // database is only ever written by the session; callers run it on the owner node. A partial write leaves a null
+    // title or content as it is, a full one replaces both. With an If-Match tag the write only goes
+    // through if nothing changed since the client read the document. Empty when there is no such document.
+    public Optional<DocumentVersion> write(Long documentId, String title, String content, boolean partial, String ifMatch) {
+        while (true) {
+            DocumentSession session = open(documentId);
+            if (session == null) {
+                return Optional.empty();
+            }
+            DocumentEditMessage broadcast = null;
+            DocumentVersion version;
+            synchronized (session) {
+                if (session.isClosed()) {
+                    continue;
+                }
+                if (!ETags.matchHolds(ifMatch, session.version().etag())) {
+                    throw new PreconditionFailedException("Document " + documentId + " was changed since it was read");
+                }
+                String newTitle = partial && title == null ? session.getTitle() : title;
+                if (!Objects.equals(session.getTitle(), newTitle)) {
+                    session.setTitle(newTitle);
+                }
+                String newContent = content != null ? content : partial ? null : "";
+                DocumentEditMessage edit = newContent == null ? null : diff(session.getContent(), newContent);
+                if (edit != null) {
+                    // computed against the live content, so nothing needs transforming
+                    edit.setBaseRevision(session.getRevision());
+                    edit.setTimestamp(System.currentTimeMillis());
+                    broadcast = operationalTransformService.apply(documentId, edit, session.length());
+                    session.apply(broadcast);
+                    editJournalService.record(documentId, broadcast);
+                }
+                version = session.version();
+            }
+            if (broadcast != null) {
+                messagingTemplate.convertAndSend(DocumentTopics.topic(documentId, DocumentTopics.UPDATES), broadcast);
+            }
+            // rare next to edits, and listings read the row, so it is written back right away
+            flush(session);
+            return Optional.of(version);
+        }
+    }
+
+    public Optional<Document> snapshot(Long documentId) {
+        DocumentSession session = sessions.get(documentId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        synchronized (session) {
+            return session.isClosed() ? Optional.empty() : Optional.of(session.toDocument());
+        }
+    }
+
+    // The live document's version without copying its content, for conditional requests
+    public Optional<DocumentVersion> version(Long documentId) {
+        DocumentSession session = sessions.get(documentId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        synchronized (session) {
+            return session.isClosed() ? Optional.empty() : Optional.of(session.version());
+        }
+    }
+
+    // Drops the session without writing it back, used when the document itself is deleted
+    public void discard(Long documentId) {
+        DocumentSession session = sessions.remove(documentId);
+        if (session != null) {
+            synchronized (session) {
+                session.close();
+            }
+        }
+        operationalTransformService.evict(documentId);
+    }
+
+    // Writes the session back and drops it even while clients are connected, used when another
+    // node takes the document over
+    public void release(Long documentId) {
+        DocumentSession session = sessions.get(documentId);
+        if (session != null) {
+            close(session, true);
+        }
+    }
+
+    public Set<Long> openDocuments() {
+        return Set.copyOf(sessions.keySet());
+    }
+
+    // Folds edits journaled before a crash back into their snapshots so no tail outlives its session
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverJournaledEdits() {
+        // in a cluster the tail may belong to a session live on another node; its owner replays it on open
+        if (clusterMembership.isClustered()) {
+            return;
+        }
+        for (Long documentId : editJournalService.findDocumentsWithPendingEdits()) {
+            DocumentSession session = open(documentId);
+            if (session != null) {
+                log.info("Recovering journaled edits of document {}", documentId);
+                closeIfIdle(session);
+            }
+        }
+    }
+
+    // A snapshot at or past the lost entry makes the journal tail after it contiguous again; a closed
+    // session already wrote one when it closed
+    @EventListener
+    public void onJournalGap(EditJournalService.JournalGap gap) {
+        DocumentSession session = sessions.get(gap.documentId());
+        if (session != null) {
+            taskScheduler.schedule(() -> flush(session), Instant.now());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${collab.session.flush-interval-ms:5000}")
+    public void flushSessions() {
+        for (DocumentSession session : sessions.values()) {
+            try {
+                boolean idle;
+                synchronized (session) {
+                    // edits forwarded from other nodes keep a session without local readers open
+                    idle = session.connectedCount() == 0 && !session.isDirty();
+                }
+                if (idle) {
+                    close(session, false);
+                } else {
+                    flush(session);
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to flush document {}: {}", session.getDocumentId(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        sessions.values().forEach(this::flush);
+    }
+
+    void flush(DocumentSession session) {
+        synchronized (session.flushMonitor()) {
+            Document snapshot;
+            long changeCount;
+            long rowVersion;
+            boolean contentDirty;
+            synchronized (session) {
+                if (session.isClosed() || !session.isDirty()) {
+                    return;
+                }
+                snapshot = session.toDocument();
+                changeCount = session.getChangeCount();
+                rowVersion = session.getRowVersion();
+                contentDirty = session.isContentDirty();
+            }
+            if (!store(snapshot, contentDirty, rowVersion)) {
+                reload(session);
+                return;
+            }
+            synchronized (session) {
+                session.markFlushed(changeCount, snapshot.getSnapshotSequence(), snapshot.getVersion());
+            }
+        }
+    }
+
+    private DocumentSession open(Long documentId) {
+        DocumentSession session = sessions.get(documentId);
+        if (session != null) {
+            return session;
+        }
+        return sessions.computeIfAbsent(documentId, id -> documentRepository.findById(id)
+                .map(this::restore)
+                .orElse(null));
+    }
+
+    // Latest snapshot plus a replay of the journal tail that never made it into a snapshot
+    private DocumentSession restore(Document document) {
+        DocumentSession session = new DocumentSession(document);
+        long snapshotSequence = document.getSnapshotSequence() == null ? 0L : document.getSnapshotSequence();
+        long revision = editJournalService.replay(document.getId(), snapshotSequence, session.content());
+        session.restored(revision, revision > snapshotSequence);
+        operationalTransformService.seed(document.getId(), revision);
+        return session;
+    }
+
+    private void leave(Long documentId, String sessionId) {
+        DocumentSession session = sessions.get(documentId);
+        if (session == null) {
+            return;
+        }
+        boolean empty;
+        synchronized (session) {
+            empty = session.disconnect(sessionId);
+        }
+        log.debug("Session {} left document {}", sessionId, documentId);
+        if (empty) {
+            taskScheduler.schedule(() -> closeIfIdle(session), Instant.now());
+        }
+    }
+
+    private void closeIfIdle(DocumentSession session) {
+        synchronized (session) {
+            if (session.connectedCount() > 0) {
+                return;
+            }
+        }
+        close(session, false);
+    }
+
+    private void close(DocumentSession session, boolean evenIfConnected) {
+        boolean stored = true;
+        synchronized (session.flushMonitor()) {
+            synchronized (session) {
+                if (session.isClosed() || (session.connectedCount() > 0 && !evenIfConnected)) {
+                    return;
+                }
+                if (session.isDirty()) {
+                    Document snapshot = session.toDocument();
+                    stored = store(snapshot, session.isContentDirty(), session.getRowVersion());
+                    if (stored) {
+                        session.markFlushed(session.getChangeCount(), session.getRevision(), snapshot.getVersion());
+                    }
+                }
+                if (stored) {
+                    drop(session);
+                }
+            }
+            if (!stored) {
+                reload(session);
+                return;
+            }
+        }
+        log.debug("Closed session for document {}", session.getDocumentId());
+    }
+
+    private void drop(DocumentSession session) {
+        synchronized (session) {
+            session.close();
+            sessions.remove(session.getDocumentId(), session);
+            operationalTransformService.evict(session.getDocumentId());
+        }
+    }
+
+    // The row changed behind the session, e.g. written by a node that still took itself for the
+    // owner. The session is dropped without writing; the next open reads the row and replays the
+    // journal on top, and the readers are told to catch up from that.
+    private void reload(DocumentSession session) {
+        Long documentId = session.getDocumentId();
+        log.error("Document {} was written behind its session, reloading it", documentId);
+        drop(session);
+        DocumentEditMessage marker = new DocumentEditMessage();
+        marker.setDocumentId(documentId);
+        marker.setOperation(SlowConsumerGuard.RESYNC);
+        marker.setTimestamp(System.currentTimeMillis());
+        messagingTemplate.convertAndSend(DocumentTopics.topic(documentId, DocumentTopics.UPDATES), marker);
+    }
+
+    // Writes the snapshot, with its live version, unless the row is no longer at rowVersion; returns whether it was written
+    private boolean store(Document snapshot, boolean contentDirty, long rowVersion) {
+        if (!contentDirty) {
+            int updated = documentRepository.updateTitle(snapshot.getId(), snapshot.getTitle(), snapshot.getUpdatedAt(),
+                    snapshot.getVersion(), rowVersion);
+            log.debug("Flushed title of document {} ({} row)", snapshot.getId(), updated);
+            return updated > 0;
+        }
+        int updated = documentRepository.updateSnapshot(snapshot.getId(), snapshot.getTitle(), snapshot.getContent(),
+                snapshot.getPreview(), snapshot.getUpdatedAt(), snapshot.getSnapshotSequence(), snapshot.getVersion(), rowVersion);
+        log.debug("Flushed document {} at revision {} ({} row)", snapshot.getId(), snapshot.getSnapshotSequence(), updated);
+        if (pruneOnFlush && updated > 0) {
+            editJournalService.prune(snapshot.getId(), snapshot.getSnapshotSequence());
+        }
+        return updated > 0;
+    }
+
+    // Smallest single replace turning current into target, or null when they are equal
+    private static DocumentEditMessage diff(String current, String target) {
+        if (current.equals(target)) {
+            return null;
+        }
+        int prefix = 0;
+        int max = Math.min(current.length(), target.length());
+        while (prefix < max && current.charAt(prefix) == target.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && current.charAt(current.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix)) {
+            suffix++;
+        }
+        DocumentEditMessage operation = new DocumentEditMessage();
+        operation.setOperation(OperationalTransformService.REPLACE);
+        operation.setCursorPosition(prefix);
+        operation.setLength(current.length() - prefix - suffix);
+        operation.setChangeContent(target.substring(prefix, target.length() - suffix));
+        return operation;
+    }
+}
@@ -0,0 +1,79 @@
+package com.main.editco.service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class DocumentTopics {
+    public static final String UPDATES = "updates";
+    public static final String CURSORS = "cursors";
+    public static final String PRESENCE = "presence";
+
+    // client -> server actions under /app/document/{id}/{action}
+    public static final String EDIT = "edit";
+    public static final String CURSOR = "cursor";
+
+    private static final String TOPIC_PREFIX = "/topic/document/";
+    private static final Pattern DOCUMENT_ACTION = Pattern.compile("^/app/document/(\\d+)/(\\w+)$");
+
+    private DocumentTopics() {
+    }
+
+    public static String topic(Long documentId, String channel) {
+        return "/topic/document/" + documentId + "/" + channel;
+    }
+
+    // Returns the document id of a /topic/document/{id}/{channel} destination, or null for anything else.
+    // Parsed by hand rather than with a regex: the broker calls this for every broadcast.
+    public static Long documentId(String destination) {
+        int slash = channelSlash(destination);
+        return slash < 0 ? null : Long.valueOf(destination.substring(TOPIC_PREFIX.length(), slash));
+    }
+
+    public static String channel(String destination) {
+        int slash = channelSlash(destination);
+        return slash < 0 ? null : destination.substring(slash + 1);
+    }
+
+    // Document id of an /app/document/{id}/{action} destination, or null for anything else
+    public static Long actionDocumentId(String destination) {
+        Matcher matcher = match(DOCUMENT_ACTION, destination);
+        return matcher == null ? null : Long.valueOf(matcher.group(1));
+    }
+
+    public static String action(String destination) {
+        Matcher matcher = match(DOCUMENT_ACTION, destination);
+        return matcher == null ? null : matcher.group(2);
+    }
+
+    // Index of the slash before the channel if the destination is /topic/document/{digits}/{word chars}, else -1
+    private static int channelSlash(String destination) {
+        if (destination == null || !destination.startsWith(TOPIC_PREFIX)) {
+            return -1;
+        }
+        int i = TOPIC_PREFIX.length();
+        int length = destination.length();
+        while (i < length && destination.charAt(i) >= '0' && destination.charAt(i) <= '9') {
+            i++;
+        }
+        int slash = i;
+        if (slash == TOPIC_PREFIX.length() || slash - TOPIC_PREFIX.length() > 18 || slash >= length - 1
+                || destination.charAt(slash) != '/') {
+            return -1;
+        }
+        for (i = slash + 1; i < length; i++) {
+            char c = destination.charAt(i);
+            if (!(c == '_' || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                return -1;
+            }
+        }
+        return slash;
+    }
+
+    private static Matcher match(Pattern pattern, String destination) {
+        if (destination == null) {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(destination);
+        return matcher.matches() ? matcher : null;
+    }
+}
@@ -0,0 +1,215 @@
+package com.main.editco.service;
+
+import com.main.editco.dao.entities.EditJournalEntry;
+import com.main.editco.dao.repositories.EditJournalRepository;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.util.Rope;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Slf4j
+@Service
+public class EditJournalService {
+    private static final String INSERT_SQL = "insert into edit_journal " +
+            "(document_id, sequence_number, operation, cursor_position, removed_length, change_content, session_id, email, created_at) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired EditJournalRepository editJournalRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired ApplicationEventPublisher eventPublisher;
+
+    @Value("${collab.journal.batch-size:500}")
+    private int batchSize;
+    @Value("${collab.journal.max-delay-ms:50}")
+    private long maxDelayMs;
+    @Value("${collab.journal.queue-capacity:100000}")
+    private int queueCapacity;
+
+    private BlockingQueue<Object[]> pending;
+    private Thread writer;
+    private volatile boolean running;
+    // held while a batch is written; documents being deleted, with the last sequence skipped for them
+    private final ReentrantLock writing = new ReentrantLock();
+    private final Map<Long, Long> deleting = new ConcurrentHashMap<>();
+
+    // An accepted operation that did not make it into the journal; replay stops before it, so the
+    // document's next snapshot has to cover it
+    public record JournalGap(Long documentId, long sequence) {}
+
+    @PostConstruct
+    public void start() {
+        pending = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::writeLoop, "edit-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Queues an accepted operation; the insert happens on the journal writer thread in batches.
+    // Never waits, callers hold the session's lock: when the queue is full the entry is given up
+    // and a snapshot is taken in its place.
+    public void record(Long documentId, DocumentEditMessage operation) {
+        Object[] row = {
+                documentId,
+                operation.getRevision(),
+                operation.getOperation(),
+                operation.getCursorPosition(),
+                operation.getLength(),
+                operation.getChangeContent(),
+                operation.getSessionId(),
+                operation.getEmail(),
+                Timestamp.from(Instant.ofEpochMilli(operation.getTimestamp() == null ? System.currentTimeMillis() : operation.getTimestamp()))
+        };
+        if (!pending.offer(row)) {
+            log.warn("Edit journal queue full, snapshotting document {} instead of journaling revision {}",
+                    documentId, operation.getRevision());
+            eventPublisher.publishEvent(new JournalGap(documentId, operation.getRevision()));
+        }
+    }
+
+    // Applies every journaled operation after afterSequence to content and returns the last sequence applied
+    public long replay(Long documentId, long afterSequence, Rope content) {
+        long sequence = afterSequence;
+        for (EditJournalEntry entry : editJournalRepository
+                .findByDocumentIdAndSequenceNumberGreaterThanOrderBySequenceNumberAsc(documentId, afterSequence)) {
+            if (entry.getSequenceNumber() != sequence + 1) {
+                log.warn("Edit journal of document {} has a gap after sequence {}, stopping replay", documentId, sequence);
+                break;
+            }
+            int position = Math.min(entry.getCursorPosition(), content.length());
+            int removed = Math.min(entry.getRemovedLength(), content.length() - position);
+            content.replace(position, removed, entry.getChangeContent() == null ? "" : entry.getChangeContent());
+            sequence = entry.getSequenceNumber();
+        }
+        if (sequence > afterSequence) {
+            log.info("Replayed {} journaled edits onto document {}", sequence - afterSequence, documentId);
+        }
+        return sequence;
+    }
+
+    public List<Long> findDocumentsWithPendingEdits() {
+        return editJournalRepository.findDocumentIdsWithPendingEdits();
+    }
+
+    public void prune(Long documentId, long upToSequence) {
+        int deleted = editJournalRepository.deleteUpTo(documentId, upToSequence);
+        log.debug("Pruned {} journal entries of document {}", deleted, documentId);
+    }
+
+    // Deletes the document's journal within the caller's transaction. From here until that
+    // transaction completes the writer skips the document, since a row inserted after this delete
+    // would keep the document row itself from being deleted. If the deletion rolls back, the
+    // document is snapshotted in place of what was skipped.
+    public void deleteByDocument(Long documentId) {
+        deleting.put(documentId, 0L);
+        // waits out a batch taken from the queue before the document was marked
+        writing.lock();
+        writing.unlock();
+        editJournalRepository.deleteByDocument(documentId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    deleted(documentId, status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            deleted(documentId, true);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        List<Object[]> remaining = new ArrayList<>();
+        pending.drainTo(remaining);
+        write(remaining);
+    }
+
+    private void writeLoop() {
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Object[] first = pending.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Object[] next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutting down, stop() writes whatever is left
+            }
+            writing.lock();
+            try {
+                batch.removeIf(this::skipped);
+                write(batch);
+            } finally {
+                writing.unlock();
+            }
+            batch.clear();
+        }
+    }
+
+    private boolean skipped(Object[] row) {
+        return deleting.computeIfPresent((Long) row[0], (documentId, sequence) -> Math.max(sequence, (Long) row[1])) != null;
+    }
+
+    private void deleted(Long documentId, boolean committed) {
+        if (committed) {
+            pending.removeIf(row -> documentId.equals(row[0]));
+        }
+        Long skipped = deleting.remove(documentId);
+        if (!committed && skipped != null && skipped > 0) {
+            log.warn("Deletion of document {} rolled back, snapshotting the edits not journaled meanwhile", documentId);
+            eventPublisher.publishEvent(new JournalGap(documentId, skipped));
+        }
+    }
+
+    private void write(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        } catch (DataAccessException e) {
+            // one bad row (e.g. a document deleted mid-flight) must not lose the rest of the batch
+            log.warn("Batched journal insert of {} rows failed, retrying row by row: {}", rows.size(), e.getMessage());
+            for (Object[] row : rows) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, row);
+                } catch (DataAccessException rowFailure) {
+                    log.error("Could not journal entry {} of document {}, snapshotting it instead: {}",
+                            row[1], row[0], rowFailure.getMessage());
+                    eventPublisher.publishEvent(new JournalGap((Long) row[0], (Long) row[1]));
+                }
+            }
+        }
+    }
+}
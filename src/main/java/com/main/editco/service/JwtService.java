@@ -2,6 +2,7 @@ package com.main.editco.service;
 
 import com.main.editco.dao.entities.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.beans.factory.annotation.Value;
@@ -25,23 +26,28 @@ public class JwtService {
                 .signWith(SignatureAlgorithm.HS256, secretKey)
                 .compact();
     }
+
+    // Single parse: checks the signature and expiry and returns the claims, or throws JwtException
+    public Claims verify(String token) {
+        Claims claims = Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody();
+        if (claims.getSubject() == null || claims.getExpiration() == null) {
+            throw new JwtException("Token has no subject or expiry");
+        }
+        return claims;
+    }
+
     public String extractEmail(String token) {
-        return getClaims(token).getSubject();
+        return verify(token).getSubject();
     }
     public boolean validateToken(String token, User user) {
-        String email = extractEmail(token);
-        return (user.getEmail().equals(email) && !isExpired(token));
+        return validateToken(token, user.getEmail());
     }
 
     public boolean validateToken(String token, String email) {
-        String tokenEmail = extractEmail(token);
-        return (email.equals(tokenEmail) && !isExpired(token));
-    }
-    private boolean isExpired(String token) {
-
-        return getClaims(token).getExpiration().before(new Date());
-    }
-    private Claims getClaims(String token) {
-        return Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody();
+        try {
+            return email.equals(verify(token).getSubject());
+        } catch (JwtException | IllegalArgumentException e) {
+            return false;
+        }
     }
 }
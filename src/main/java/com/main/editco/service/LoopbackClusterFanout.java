@@ -0,0 +1,60 @@
+package com.main.editco.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Fan-out between application contexts in the same JVM. Each node delivers on its own thread, the
+// way a network hop would, so a publisher never runs another node's broker on its stack.
+@Service
+@ConditionalOnProperty(name = "collab.cluster.fanout", havingValue = "loopback")
+public class LoopbackClusterFanout implements ClusterFanout {
+    private static final List<LoopbackClusterFanout> NODES = new CopyOnWriteArrayList<>();
+
+    private final String nodeId;
+    private final List<Consumer<Envelope>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService delivery;
+
+    public LoopbackClusterFanout(@Value("${collab.cluster.node-id:}") String nodeId) {
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.delivery = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-loopback-" + this.nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        NODES.add(this);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(Envelope envelope) {
+        for (LoopbackClusterFanout node : NODES) {
+            if (node != this) {
+                node.delivery.execute(() -> node.listeners.forEach(listener -> listener.accept(envelope)));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Envelope> listener) {
+        listeners.add(listener);
+    }
+
+    @PreDestroy
+    public void stop() {
+        NODES.remove(this);
+        delivery.shutdown();
+    }
+}
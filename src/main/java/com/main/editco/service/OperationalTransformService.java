@@ -0,0 +1,249 @@
+package com.main.editco.service;
+
+import com.main.editco.dto.DocumentEditMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+public class OperationalTransformService {
+    public static final String INSERT = "insert";
+    public static final String DELETE = "delete";
+    public static final String REPLACE = "replace";
+
+    @Value("${collab.ot.max-log-size:500}")
+    private int maxLogSize;
+
+    private final Map<Long, RevisionLog> logs = new ConcurrentHashMap<>();
+
+    // Transforms an incoming operation against everything applied since its base revision,
+    // appends it to the document's revision log and returns the delta to broadcast.
+    public DocumentEditMessage apply(Long documentId, DocumentEditMessage message) {
+        return apply(documentId, message, -1);
+    }
+
+    // Same as apply(documentId, message) but rejects the transformed operation when it falls
+    // outside a document of contentLength characters, before anything is appended to the log.
+    public DocumentEditMessage apply(Long documentId, DocumentEditMessage message, int contentLength) {
+        DocumentEditMessage incoming = normalize(message);
+        RevisionLog revisionLog = logs.computeIfAbsent(documentId, id -> new RevisionLog());
+        synchronized (revisionLog) {
+            long current = revisionLog.revision;
+            long oldest = current - revisionLog.operations.size();
+            if (incoming.getBaseRevision() == null) {
+                throw new IllegalArgumentException("A baseRevision is required");
+            }
+            long base = incoming.getBaseRevision();
+            if (base > current) {
+                throw new IllegalArgumentException("Unknown base revision " + base + " for document " + documentId);
+            }
+            if (base < oldest) {
+                throw new IllegalStateException("Revision " + base + " is too old for document " + documentId + ", resync required");
+            }
+            DocumentEditMessage transformed = incoming;
+            Iterator<DocumentEditMessage> iterator = revisionLog.operations.iterator();
+            for (long skip = base - oldest; skip > 0; skip--) {
+                iterator.next();
+            }
+            while (iterator.hasNext()) {
+                DocumentEditMessage applied = iterator.next();
+                // a client's later operations already account for its own earlier ones
+                if (applied.getSessionId() != null && applied.getSessionId().equals(incoming.getSessionId())) {
+                    continue;
+                }
+                transformed = transform(transformed, applied);
+            }
+            if (contentLength >= 0 && transformed.getCursorPosition() + transformed.getLength() > contentLength) {
+                throw new IllegalArgumentException("Operation at " + transformed.getCursorPosition()
+                        + " exceeds document length " + contentLength);
+            }
+            transformed.setDocumentId(documentId);
+            transformed.setBaseRevision(current);
+            transformed.setRevision(current + 1);
+            revisionLog.revision = current + 1;
+            revisionLog.operations.addLast(copy(transformed));
+            while (revisionLog.operations.size() > maxLogSize) {
+                revisionLog.operations.removeFirst();
+            }
+            log.debug("Applied {} on document {} at revision {} (base {})",
+                    transformed.getOperation(), documentId, transformed.getRevision(), base);
+            return transformed;
+        }
+    }
+
+    // The broadcast operations applied after revision, oldest first. Empty when the log no longer
+    // reaches back that far (or the document has none), in which case the caller sends a snapshot.
+    public Optional<List<DocumentEditMessage>> since(Long documentId, long revision) {
+        RevisionLog revisionLog = logs.get(documentId);
+        if (revisionLog == null) {
+            return Optional.empty();
+        }
+        synchronized (revisionLog) {
+            long current = revisionLog.revision;
+            if (revision < current - revisionLog.operations.size() || revision > current) {
+                return Optional.empty();
+            }
+            List<DocumentEditMessage> missing = new ArrayList<>((int) (current - revision));
+            Iterator<DocumentEditMessage> newestFirst = revisionLog.operations.descendingIterator();
+            for (long skip = current - revision; skip > 0; skip--) {
+                missing.add(copy(newestFirst.next()));
+            }
+            Collections.reverse(missing);
+            return Optional.of(missing);
+        }
+    }
+
+    public long getRevision(Long documentId) {
+        RevisionLog revisionLog = logs.get(documentId);
+        if (revisionLog == null) {
+            return 0L;
+        }
+        synchronized (revisionLog) {
+            return revisionLog.revision;
+        }
+    }
+
+    // Starts a fresh log for a document whose content already includes every operation up to revision
+    public void seed(Long documentId, long revision) {
+        RevisionLog revisionLog = new RevisionLog();
+        revisionLog.revision = revision;
+        logs.put(documentId, revisionLog);
+    }
+
+    public void evict(Long documentId) {
+        logs.remove(documentId);
+    }
+
+    // Rewrites operation so that it applies on top of an already applied concurrent operation; on the
+    // server the applied one was accepted first and wins ties.
+    public static DocumentEditMessage transform(DocumentEditMessage operation, DocumentEditMessage applied) {
+        return transform(operation, applied, false);
+    }
+
+    // Both operations replace a range of the same text. Transforming either one against the other gives
+    // the same result (TP1): the union of the removed ranges is gone and neither side's inserted text is
+    // lost. Ranges that merely touch keep their insertions in place; overlapping ones put both insertions
+    // at the start of the union, the one that starts first (or, on a tie, the winner of the tie) first.
+    public static DocumentEditMessage transform(DocumentEditMessage operation, DocumentEditMessage applied,
+                                                boolean operationWinsTies) {
+        int position = operation.getCursorPosition();
+        int end = position + operation.getLength();
+        String inserted = operation.getChangeContent();
+        int appliedPosition = applied.getCursorPosition();
+        int appliedEnd = appliedPosition + applied.getLength();
+        String appliedInserted = applied.getChangeContent();
+        int shift = appliedInserted.length() - applied.getLength();
+
+        DocumentEditMessage result = copy(operation);
+        boolean samePoint = position == end && appliedPosition == appliedEnd && position == appliedPosition;
+        boolean overlapping = position < appliedEnd && appliedPosition < end;
+        if (samePoint) {
+            // two inserts at one spot: the loser goes after the winner's text
+            if (!operationWinsTies) {
+                result.setCursorPosition(position + appliedInserted.length());
+            }
+            return result;
+        }
+        if (!overlapping) {
+            if (end <= appliedPosition) {
+                return result;
+            }
+            result.setCursorPosition(position + shift);
+            return result;
+        }
+        boolean operationFirst = position < appliedPosition || (position == appliedPosition && operationWinsTies);
+        int unionStart = Math.min(position, appliedPosition);
+        int unionEnd = Math.max(end, appliedEnd);
+        if (!operationFirst) {
+            // the applied text stays at the start of the union, this one follows it
+            result.setCursorPosition(appliedPosition + appliedInserted.length());
+            result.setLength(Math.max(0, unionEnd - appliedEnd));
+        } else if (end <= appliedEnd) {
+            // this text goes in front of the applied one, removing what is left before it
+            result.setCursorPosition(unionStart);
+            result.setLength(appliedPosition - unionStart);
+        } else {
+            // this range contains the applied one: remove all of it and put the applied text back after ours
+            result.setCursorPosition(unionStart);
+            result.setLength(unionEnd + shift - unionStart);
+            result.setChangeContent(inserted + appliedInserted);
+        }
+        result.setOperation(operationName(result.getLength(), result.getChangeContent()));
+        return result;
+    }
+
+    private static DocumentEditMessage normalize(DocumentEditMessage message) {
+        String operation = message.getOperation() == null ? "" : message.getOperation().toLowerCase();
+        if (message.getCursorPosition() == null || message.getCursorPosition() < 0) {
+            throw new IllegalArgumentException("A non-negative cursorPosition is required");
+        }
+        DocumentEditMessage normalized = copy(message);
+        normalized.setOperation(operation);
+        switch (operation) {
+            case INSERT -> {
+                normalized.setLength(0);
+                if (normalized.getChangeContent() == null) {
+                    normalized.setChangeContent("");
+                }
+            }
+            case DELETE -> {
+                normalized.setChangeContent("");
+                requireLength(normalized);
+            }
+            case REPLACE -> {
+                if (normalized.getChangeContent() == null) {
+                    normalized.setChangeContent("");
+                }
+                requireLength(normalized);
+            }
+            default -> throw new IllegalArgumentException("Unsupported operation: " + message.getOperation());
+        }
+        return normalized;
+    }
+
+    private static void requireLength(DocumentEditMessage message) {
+        if (message.getLength() == null || message.getLength() < 0) {
+            throw new IllegalArgumentException("A non-negative length is required for " + message.getOperation());
+        }
+    }
+
+    private static String operationName(int removed, String inserted) {
+        if (removed > 0 && !inserted.isEmpty()) {
+            return REPLACE;
+        }
+        return removed > 0 ? DELETE : INSERT;
+    }
+
+    static DocumentEditMessage copy(DocumentEditMessage message) {
+        return new DocumentEditMessage(
+                message.getDocumentId(),
+                message.getEmail(),
+                message.getUserName(),
+                message.getOperation(),
+                message.getCursorPosition(),
+                message.getChangeContent(),
+                message.getLength(),
+                message.getSessionId(),
+                message.getTimestamp(),
+                message.getBaseRevision(),
+                message.getRevision(),
+                message.getClientEditId()
+        );
+    }
+
+    private static class RevisionLog {
+        private long revision;
+        private final Deque<DocumentEditMessage> operations = new ArrayDeque<>();
+    }
+}
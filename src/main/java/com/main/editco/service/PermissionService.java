@@ -11,6 +11,7 @@ import java.util.Optional;
 @Service
 public class PermissionService {
     @Autowired PermissionRepository permissionRepository;
+    @Autowired AccessControlIndex accessControlIndex;
 
     public Permission grantPermission(Permission permission) {
         List<Permission> existingPermissions = permissionRepository.findByDocumentId(permission.getDocument().getId());
@@ -18,15 +19,17 @@ public class PermissionService {
         if (existingPermission.isPresent()) {
             Permission existing = existingPermission.get();
             existing.setAccessType(permission.getAccessType());
-            return permissionRepository.save(existing);
+            return indexed(permissionRepository.save(existing));
         }
 
-        return permissionRepository.save(permission);
+        return indexed(permissionRepository.save(permission));
     }
 
     public boolean revokePermission(Long permissionId) {
-        if (permissionRepository.existsById(permissionId)) {
+        Optional<Permission> permission = permissionRepository.findById(permissionId);
+        if (permission.isPresent()) {
             permissionRepository.deleteById(permissionId);
+            accessControlIndex.revoked(permission.get().getDocument().getId(), permission.get().getUser().getId());
             return true;
         }
         return false;
@@ -39,6 +42,7 @@ public class PermissionService {
                 .toList();
 
         userPermissions.forEach(p -> permissionRepository.deleteById(p.getId()));
+        accessControlIndex.revoked(documentId, userId);
         return userPermissions.size();
     }
 
@@ -53,4 +57,9 @@ public class PermissionService {
     public Optional<Permission> getPermission(Long id) {
         return permissionRepository.findById(id);
     }
+
+    private Permission indexed(Permission permission) {
+        accessControlIndex.granted(permission.getDocument().getId(), permission.getUser().getId(), permission.getAccessType());
+        return permission;
+    }
 }
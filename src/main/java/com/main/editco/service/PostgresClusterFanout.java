@@ -0,0 +1,213 @@
+package com.main.editco.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Fan-out over PostgreSQL. Broadcasts are batched into the cluster_fanout table by a writer thread,
+// followed by one NOTIFY; every node LISTENs on a dedicated connection and, when woken, reads the
+// rows after the last id it has seen. Ids from two nodes' writers can commit out of order, so each
+// read also looks back a window of ids and skips the ones already delivered. NOTIFY payloads are capped at 8000 bytes, which is why the
+// messages travel through the table and the notification only says "look". Rows are pruned after
+// collab.cluster.retention-ms.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "collab.cluster.fanout", havingValue = "postgres")
+public class PostgresClusterFanout implements ClusterFanout {
+    private static final String CHANNEL = "coedit_fanout";
+    // ids below the highest seen that are re-read in case they committed late
+    private static final int LOOKBACK = 1_000;
+    private static final String INSERT_SQL = "insert into cluster_fanout " +
+            "(origin_node, destination, content_type, payload, sent_at, created_at) values (?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_SQL = "select id, origin_node, destination, content_type, payload, sent_at " +
+            "from cluster_fanout where id > ? order by id";
+
+    @Autowired DataSource dataSource;
+    @Autowired JdbcTemplate jdbcTemplate;
+
+    @Value("${collab.cluster.node-id:}")
+    private String configuredNodeId;
+    @Value("${collab.cluster.batch-size:200}")
+    private int batchSize;
+    @Value("${collab.cluster.retention-ms:60000}")
+    private long retentionMs;
+
+    private String nodeId;
+    private final BlockingQueue<Envelope> pending = new LinkedBlockingQueue<>(100_000);
+    private final List<Consumer<Envelope>> listeners = new CopyOnWriteArrayList<>();
+    // ids delivered within the lookback window; only touched on the listener thread
+    private final NavigableSet<Long> delivered = new TreeSet<>();
+    // rows that existed before this node started are never delivered
+    private long startId;
+    private volatile boolean running;
+    private Thread writer;
+    private Thread listener;
+
+    @PostConstruct
+    public void start() {
+        nodeId = configuredNodeId.isBlank() ? UUID.randomUUID().toString() : configuredNodeId;
+        running = true;
+        writer = new Thread(this::writeLoop, "cluster-fanout-writer");
+        writer.setDaemon(true);
+        writer.start();
+        listener = new Thread(this::listenLoop, "cluster-fanout-listener");
+        listener.setDaemon(true);
+        listener.start();
+        log.info("Cluster fan-out over PostgreSQL as node {}", nodeId);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        listener.interrupt();
+        writer.join(5_000);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(Envelope envelope) {
+        if (!pending.offer(envelope)) {
+            log.warn("Cluster fan-out queue full, dropping broadcast to {}", envelope.destination());
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Envelope> listener) {
+        listeners.add(listener);
+    }
+
+    @Scheduled(fixedDelayString = "${collab.cluster.retention-ms:60000}")
+    public void prune() {
+        try {
+            jdbcTemplate.update("delete from cluster_fanout where created_at < ?",
+                    Timestamp.from(Instant.now().minusMillis(retentionMs)));
+        } catch (DataAccessException e) {
+            log.warn("Could not prune cluster_fanout: {}", e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        List<Envelope> batch = new ArrayList<>(batchSize);
+        while (running || !pending.isEmpty()) {
+            try {
+                Envelope first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (DataAccessException e) {
+                log.error("Failed to relay {} broadcasts to other nodes", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Envelope> batch) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (statement, envelope) -> {
+            statement.setString(1, envelope.origin());
+            statement.setString(2, envelope.destination());
+            statement.setString(3, envelope.contentType());
+            statement.setString(4, new String(envelope.payload(), StandardCharsets.UTF_8));
+            statement.setLong(5, envelope.sentAt());
+            statement.setTimestamp(6, now);
+        });
+        jdbcTemplate.execute("notify " + CHANNEL);
+    }
+
+    // Holds one pooled connection for LISTEN; reconnects after a failure and catches up from the last id
+    private void listenLoop() {
+        long lastId = -1;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + CHANNEL);
+                }
+                if (lastId < 0) {
+                    lastId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from cluster_fanout", Long.class);
+                    startId = lastId;
+                }
+                lastId = read(connection, lastId);
+                PGConnection notifications = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] received = notifications.getNotifications(1_000);
+                    if (received != null && received.length > 0) {
+                        lastId = read(connection, lastId);
+                    }
+                }
+            } catch (SQLException | DataAccessException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cluster fan-out listener lost its connection, retrying: {}", e.getMessage());
+                try {
+                    Thread.sleep(1_000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private long read(Connection connection, long lastId) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_SQL)) {
+            select.setLong(1, lastId - LOOKBACK);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    long id = rows.getLong(1);
+                    if (id <= startId || !delivered.add(id)) {
+                        continue;
+                    }
+                    lastId = Math.max(lastId, id);
+                    if (nodeId.equals(rows.getString(2))) {
+                        continue;
+                    }
+                    Envelope envelope = new Envelope(rows.getString(2), rows.getString(3), rows.getString(4),
+                            rows.getString(5).getBytes(StandardCharsets.UTF_8), rows.getLong(6));
+                    listeners.forEach(listener -> listener.accept(envelope));
+                }
+            }
+        }
+        delivered.headSet(lastId - LOOKBACK, true).clear();
+        return lastId;
+    }
+}
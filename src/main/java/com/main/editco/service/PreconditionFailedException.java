@@ -0,0 +1,8 @@
+package com.main.editco.service;
+
+// An If-Match precondition no longer holds: the document changed since the client read it
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
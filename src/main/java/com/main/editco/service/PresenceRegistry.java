@@ -0,0 +1,293 @@
+package com.main.editco.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.dto.PresenceSnapshotMessage;
+import com.main.editco.dto.UserPresenceMessage;
+import com.main.editco.util.CompactCodec;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Who is on which document, tracked from subscriptions to the presence topic instead of from what
+// clients announce. A user is present while any of their sessions is subscribed; a new subscriber
+// gets a snapshot on its own subscription and everyone else only sees join/leave diffs. Sessions
+// that die silently are closed by the broker's heartbeat check and arrive here as a disconnect.
+// With a ClusterFanout, every node tells the others when a user arrives on or leaves a document
+// through its sessions, and sends everything it knows when the ring gains a node; a node that
+// drops out of the ring takes its users with it. Snapshots and diffs come from this cluster-wide
+// view, and each node sends the diffs to its own subscribers, so a user whose tabs are spread over
+// two nodes only leaves once the last of them is gone.
+@Slf4j
+@Service
+public class PresenceRegistry {
+    public static final String JOIN = "join";
+    public static final String LEAVE = "leave";
+    public static final String SNAPSHOT = "snapshot";
+    private static final String CHANGED = "/cluster/presence";
+    private static final String STATE = "/cluster/presence/state";
+
+    @Autowired SimpMessagingTemplate messagingTemplate;
+    @Autowired @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel;
+    @Autowired MeterRegistry meterRegistry;
+    @Autowired(required = false) ClusterFanout clusterFanout;
+    @Autowired ObjectMapper objectMapper;
+
+    // per document, present users by id; per session, which document each subscription is on.
+    // Only touched under the registry lock; the outer maps are concurrent for the gauges.
+    private final Map<Long, Map<Long, Member>> documents = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Subscription>> sessions = new ConcurrentHashMap<>();
+    // per other node, the users present through its sessions: document -> user id -> name
+    private final Map<String, Map<Long, Map<Long, String>>> remote = new HashMap<>();
+
+    // sends straight to one session's subscription, bypassing the broker
+    private SimpMessagingTemplate subscriberTemplate;
+
+    private record Subscription(Long documentId, Long userId) {}
+
+    record PresenceChange(Long documentId, Long userId, String userName, boolean present) {}
+
+    // everything one node has present; a request asks the receivers to send theirs back
+    record PresenceState(boolean request, List<PresenceChange> present) {}
+
+    @PostConstruct
+    public void init() {
+        subscriberTemplate = new SimpMessagingTemplate(clientOutboundChannel);
+        subscriberTemplate.setMessageConverter(messagingTemplate.getMessageConverter());
+        Gauge.builder("coedit.presence.documents", documents, Map::size).register(meterRegistry);
+        Gauge.builder("coedit.presence.sessions", sessions, Map::size).register(meterRegistry);
+        if (clusterFanout != null) {
+            clusterFanout.subscribe(this::receive);
+        }
+    }
+
+    // Mutations publish while holding the lock, so diffs go out in the order the registry changed
+    public synchronized void join(Long documentId, String sessionId, String subscriptionId, CurrentUser user) {
+        Map<String, Subscription> subscriptions = sessions.computeIfAbsent(sessionId, id -> new HashMap<>());
+        if (subscriptions.putIfAbsent(subscriptionId, new Subscription(documentId, user.id())) != null) {
+            return;
+        }
+        Member member = documents.computeIfAbsent(documentId, id -> new HashMap<>())
+                .computeIfAbsent(user.id(), id -> new Member(user));
+        boolean arrived = member.subscriptions++ == 0;
+
+        // the newcomer may also see its own join diff; applying it on top of the snapshot is a no-op
+        sendSnapshot(documentId, sessionId, subscriptionId);
+        if (arrived) {
+            log.debug("User {} is now present on document {}", user.id(), documentId);
+            publish(CHANGED, new PresenceChange(documentId, member.userId, member.userName, true));
+            if (!presentRemotely(documentId, member.userId)) {
+                broadcast(documentId, member.userId, member.userName, JOIN);
+            }
+        }
+    }
+
+    // For a subscriber that missed diffs, e.g. while its connection was lagging
+    public synchronized void resendSnapshot(Long documentId, String sessionId, String subscriptionId) {
+        sendSnapshot(documentId, sessionId, subscriptionId);
+    }
+
+    public synchronized void leave(String sessionId, String subscriptionId) {
+        Map<String, Subscription> subscriptions = sessions.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        Subscription subscription = subscriptions.remove(subscriptionId);
+        if (subscriptions.isEmpty()) {
+            sessions.remove(sessionId);
+        }
+        if (subscription != null) {
+            release(subscription);
+        }
+    }
+
+    public synchronized void disconnect(String sessionId) {
+        Map<String, Subscription> subscriptions = sessions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::release);
+        }
+    }
+
+    public synchronized List<UserPresenceMessage> present(Long documentId) {
+        Map<Long, String> users = new LinkedHashMap<>();
+        documents.getOrDefault(documentId, Map.of()).values().forEach(member -> users.put(member.userId, member.userName));
+        for (Map<Long, Map<Long, String>> node : remote.values()) {
+            node.getOrDefault(documentId, Map.of()).forEach(users::putIfAbsent);
+        }
+        List<UserPresenceMessage> present = new ArrayList<>(users.size());
+        users.forEach((userId, userName) -> present.add(message(documentId, userId, userName, JOIN)));
+        return present;
+    }
+
+    // Forgets the users of nodes that left the ring, and shares this node's users with nodes that joined it
+    @EventListener
+    public synchronized void onRingChanged(ClusterMembership.RingChanged event) {
+        for (String node : event.previous().nodes()) {
+            if (!event.current().nodes().contains(node)) {
+                replace(node, List.of());
+            }
+        }
+        if (!event.previous().nodes().containsAll(event.current().nodes())) {
+            publish(STATE, new PresenceState(true, localState()));
+        }
+    }
+
+    private void sendSnapshot(Long documentId, String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setHeader(CompactCodec.INLINE_HEADER, true);
+        headers.setLeaveMutable(true);
+        subscriberTemplate.convertAndSend(DocumentTopics.topic(documentId, DocumentTopics.PRESENCE),
+                new PresenceSnapshotMessage(documentId, SNAPSHOT, present(documentId), System.currentTimeMillis()),
+                headers.getMessageHeaders());
+    }
+
+    private void release(Subscription subscription) {
+        Map<Long, Member> members = documents.get(subscription.documentId());
+        Member member = members == null ? null : members.get(subscription.userId());
+        if (member == null || --member.subscriptions > 0) {
+            return;
+        }
+        members.remove(subscription.userId());
+        if (members.isEmpty()) {
+            documents.remove(subscription.documentId());
+        }
+        log.debug("User {} left document {}", member.userId, subscription.documentId());
+        publish(CHANGED, new PresenceChange(subscription.documentId(), member.userId, member.userName, false));
+        if (!presentRemotely(subscription.documentId(), member.userId)) {
+            broadcast(subscription.documentId(), member.userId, member.userName, LEAVE);
+        }
+    }
+
+    private void receive(ClusterFanout.Envelope envelope) {
+        if (CHANGED.equals(envelope.destination())) {
+            PresenceChange change = read(envelope, PresenceChange.class);
+            synchronized (this) {
+                apply(envelope.origin(), change);
+            }
+        } else if (STATE.equals(envelope.destination())) {
+            PresenceState state = read(envelope, PresenceState.class);
+            synchronized (this) {
+                replace(envelope.origin(), state.present());
+                if (state.request()) {
+                    publish(STATE, new PresenceState(false, localState()));
+                }
+            }
+        }
+    }
+
+    // Applies one node's arrival or departure of a user, and tells local subscribers if that changed
+    // whether the user is present at all
+    private void apply(String node, PresenceChange change) {
+        Long documentId = change.documentId();
+        boolean before = present(documentId, change.userId());
+        Map<Long, Map<Long, String>> nodeDocuments = remote.computeIfAbsent(node, id -> new HashMap<>());
+        if (change.present()) {
+            nodeDocuments.computeIfAbsent(documentId, id -> new HashMap<>()).put(change.userId(), change.userName());
+        } else {
+            Map<Long, String> users = nodeDocuments.get(documentId);
+            if (users != null) {
+                users.remove(change.userId());
+                if (users.isEmpty()) {
+                    nodeDocuments.remove(documentId);
+                }
+            }
+            if (nodeDocuments.isEmpty()) {
+                remote.remove(node);
+            }
+        }
+        if (before != present(documentId, change.userId())) {
+            broadcast(documentId, change.userId(), change.userName(), before ? LEAVE : JOIN);
+        }
+    }
+
+    // Makes present the whole of what a node has present, as departures and arrivals
+    private void replace(String node, List<PresenceChange> present) {
+        Map<Long, Map<Long, String>> known = remote.getOrDefault(node, Map.of());
+        List<PresenceChange> gone = new ArrayList<>();
+        known.forEach((documentId, users) -> users.forEach((userId, userName) -> {
+            if (present.stream().noneMatch(change -> documentId.equals(change.documentId()) && userId.equals(change.userId()))) {
+                gone.add(new PresenceChange(documentId, userId, userName, false));
+            }
+        }));
+        gone.forEach(change -> apply(node, change));
+        present.forEach(change -> apply(node, change));
+    }
+
+    private List<PresenceChange> localState() {
+        List<PresenceChange> state = new ArrayList<>();
+        documents.forEach((documentId, members) -> members.values().forEach(member ->
+                state.add(new PresenceChange(documentId, member.userId, member.userName, true))));
+        return state;
+    }
+
+    private boolean present(Long documentId, Long userId) {
+        Map<Long, Member> members = documents.get(documentId);
+        return (members != null && members.containsKey(userId)) || presentRemotely(documentId, userId);
+    }
+
+    private boolean presentRemotely(Long documentId, Long userId) {
+        return remote.values().stream().anyMatch(node -> node.getOrDefault(documentId, Map.of()).containsKey(userId));
+    }
+
+    // To this node's subscribers only; the other nodes work out their own diffs (see ClusterRelayInterceptor)
+    private void broadcast(Long documentId, Long userId, String userName, String action) {
+        messagingTemplate.convertAndSend(DocumentTopics.topic(documentId, DocumentTopics.PRESENCE),
+                message(documentId, userId, userName, action));
+    }
+
+    private void publish(String destination, Object payload) {
+        if (clusterFanout == null) {
+            return;
+        }
+        try {
+            clusterFanout.publish(new ClusterFanout.Envelope(clusterFanout.nodeId(), destination, "application/json",
+                    objectMapper.writeValueAsBytes(payload), System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode message for " + destination, e);
+        }
+    }
+
+    private <T> T read(ClusterFanout.Envelope envelope, Class<T> type) {
+        try {
+            return objectMapper.readValue(envelope.payload(), type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not decode message for " + envelope.destination(), e);
+        }
+    }
+
+    private static UserPresenceMessage message(Long documentId, Long userId, String userName, String action) {
+        return new UserPresenceMessage(documentId, String.valueOf(userId), userName, action, null,
+                System.currentTimeMillis());
+    }
+
+    // a user counts once per document however many tabs they have open
+    private static final class Member {
+        private final Long userId;
+        private final String userName;
+        private int subscriptions;
+
+        private Member(CurrentUser user) {
+            this.userId = user.id();
+            this.userName = user.displayName();
+        }
+    }
+}
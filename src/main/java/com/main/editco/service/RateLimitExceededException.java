@@ -0,0 +1,17 @@
+package com.main.editco.service;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+    private final String policy;
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(String policy, Duration retryAfter) {
+        super("Rate limit '" + policy + "' exceeded, retry in " + Math.max(1, retryAfter.toSeconds()) + " seconds");
+        this.policy = policy;
+        this.retryAfter = retryAfter;
+    }
+}
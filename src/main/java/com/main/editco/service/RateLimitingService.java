@@ -1,37 +1,120 @@
 package com.main.editco.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.main.editco.config.RateLimitProperties;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+// Token buckets per named policy and key. Each policy keeps its buckets in a size-bounded cache
+// that also drops a bucket once it has been idle for a full period, i.e. once it would be full again.
+@Slf4j
 @Service
 public class RateLimitingService {
-    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
-    public boolean allowRequest(String request) {
-        Bucket bucket = getBucket(request);
-        return bucket.tryConsume(1);
-    }
-    private Bucket getBucket(String email) {
-        return buckets.computeIfAbsent(email, key -> createNewBucket());
-    }
-    private Bucket createNewBucket() {
-        Bandwidth limit = Bandwidth.classic(
-                5,
-                Refill.intervally(5, Duration.ofMinutes(1))
-        );
-        return Bucket.builder()
-                .addLimit(limit).build();
-    }
-    public long getRemainingTokens(String email) {
-        Bucket bucket = getBucket(email);
-        return bucket.getAvailableTokens();
-    }
-    public void resetLimits(String email) {
-        buckets.remove(email);
+    // attempts per address, and per account whatever address they come from
+    public static final String LOGIN = "login";
+    public static final String LOGIN_ACCOUNT = "login-account";
+    public static final String REGISTRATION = "registration";
+    public static final String REST_WRITE = "rest-write";
+    public static final String WEBSOCKET_MESSAGE = "websocket-message";
+
+    @Autowired RateLimitProperties properties;
+    @Autowired MeterRegistry meterRegistry;
+
+    private final Map<String, Limiter> limiters = new HashMap<>();
+
+    private record Limiter(RateLimitProperties.Policy policy, Bandwidth bandwidth,
+                           Cache<String, Bucket> buckets, Counter rejected) {}
+
+    @PostConstruct
+    public void init() {
+        properties.getPolicies().forEach((name, policy) -> {
+            Cache<String, Bucket> buckets = Caffeine.newBuilder()
+                    .maximumSize(properties.getMaxKeys())
+                    .expireAfterAccess(policy.getPeriod())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rate-limit." + name);
+            Bandwidth bandwidth = Bandwidth.builder()
+                    .capacity(policy.getCapacity())
+                    .refillGreedy(policy.getCapacity(), policy.getPeriod())
+                    .build();
+            Counter rejected = Counter.builder("coedit.rate-limit.rejected").tag("policy", name).register(meterRegistry);
+            limiters.put(name, new Limiter(policy, bandwidth, buckets, rejected));
+        });
+        for (String required : List.of(LOGIN, LOGIN_ACCOUNT, REGISTRATION, REST_WRITE, WEBSOCKET_MESSAGE)) {
+            if (!limiters.containsKey(required)) {
+                throw new IllegalStateException("No rate-limit.policies." + required + " configured");
+            }
+        }
+    }
+
+    public boolean allowRequest(String policy, String user, String ip) {
+        return consume(policy, user, ip).isConsumed();
+    }
+
+    public void check(String policy, String user, String ip) {
+        ConsumptionProbe probe = consume(policy, user, ip);
+        if (!probe.isConsumed()) {
+            throw new RateLimitExceededException(policy, Duration.ofNanos(probe.getNanosToWaitForRefill()));
+        }
+    }
+
+    public long getRemainingTokens(String policy, String user, String ip) {
+        Limiter limiter = limiter(policy);
+        Bucket bucket = limiter.buckets().getIfPresent(key(limiter.policy(), user, ip));
+        return bucket == null ? limiter.policy().getCapacity() : bucket.getAvailableTokens();
+    }
+
+    public void resetLimits(String policy, String user, String ip) {
+        Limiter limiter = limiter(policy);
+        limiter.buckets().invalidate(key(limiter.policy(), user, ip));
+    }
+
+    long trackedKeys(String policy) {
+        Limiter limiter = limiter(policy);
+        limiter.buckets().cleanUp();
+        return limiter.buckets().estimatedSize();
+    }
+
+    private ConsumptionProbe consume(String policy, String user, String ip) {
+        Limiter limiter = limiter(policy);
+        Bucket bucket = limiter.buckets().get(key(limiter.policy(), user, ip),
+                key -> Bucket.builder().addLimit(limiter.bandwidth()).build());
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
+        if (!probe.isConsumed()) {
+            limiter.rejected().increment();
+        }
+        return probe;
+    }
+
+    private Limiter limiter(String policy) {
+        Limiter limiter = limiters.get(policy);
+        if (limiter == null) {
+            throw new IllegalArgumentException("Unknown rate limit policy " + policy);
+        }
+        return limiter;
+    }
+
+    // Falls back to whichever part is known, so an anonymous caller is still limited by address
+    private static String key(RateLimitProperties.Policy policy, String user, String ip) {
+        return switch (policy.getKey()) {
+            case USER -> user != null ? "u:" + user : "ip:" + ip;
+            case IP -> "ip:" + ip;
+            case USER_AND_IP -> user != null ? "u:" + user + "|ip:" + ip : "ip:" + ip;
+        };
     }
 }
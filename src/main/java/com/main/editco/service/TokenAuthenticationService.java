@@ -0,0 +1,106 @@
+package com.main.editco.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.main.editco.dto.CurrentUser;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Turns a bearer token into an Authentication. A token is verified once; repeats are served from a
+// bounded cache until the token expires (or expire-after-ms passes). The user itself comes from
+// CurrentUserService on every call so user changes are picked up without flushing tokens.
+@Slf4j
+@Service
+public class TokenAuthenticationService {
+    private static final List<GrantedAuthority> AUTHORITIES = AuthorityUtils.createAuthorityList("ROLE_USER");
+
+    @Autowired JwtService jwtService;
+    @Autowired CurrentUserService currentUserService;
+    @Autowired MeterRegistry meterRegistry;
+
+    @Value("${security.token-cache.maximum-size:10000}")
+    private long maximumSize;
+    @Value("${security.token-cache.expire-after-ms:900000}")
+    private long expireAfterMs;
+
+    private Cache<String, VerifiedToken> tokens;
+    private Timer verification;
+
+    private record VerifiedToken(String email, long expiresAtMillis) {}
+
+    @PostConstruct
+    public void init() {
+        tokens = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String token, VerifiedToken verified, long currentTime) {
+                        long untilExpiry = verified.expiresAtMillis() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(untilExpiry, expireAfterMs)));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+                        return expireAfterCreate(token, verified, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokens, "jwt.tokens");
+        verification = Timer.builder("coedit.jwt.verification")
+                .description("Signature and expiry check for tokens not in the cache")
+                .register(meterRegistry);
+    }
+
+    public Optional<UsernamePasswordAuthenticationToken> authenticate(String token) {
+        VerifiedToken verified = tokens.getIfPresent(token);
+        if (verified == null) {
+            verified = verification.record(() -> verify(token));
+            if (verified == null) {
+                return Optional.empty();
+            }
+            tokens.put(token, verified);
+        } else if (verified.expiresAtMillis() <= System.currentTimeMillis()) {
+            tokens.invalidate(token);
+            return Optional.empty();
+        }
+        CurrentUser user = currentUserService.findByEmail(verified.email());
+        if (user == null) {
+            log.debug("Rejected token for unknown user {}", verified.email());
+            return Optional.empty();
+        }
+        return Optional.of(new UsernamePasswordAuthenticationToken(user, null, AUTHORITIES));
+    }
+
+    private VerifiedToken verify(String token) {
+        Claims claims;
+        try {
+            claims = jwtService.verify(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Rejected token: {}", e.getMessage());
+            return null;
+        }
+        return new VerifiedToken(claims.getSubject(), claims.getExpiration().getTime());
+    }
+}
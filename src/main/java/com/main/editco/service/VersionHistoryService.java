@@ -2,25 +2,124 @@ package com.main.editco.service;
 
 import com.main.editco.dao.entities.VersionHistory;
 import com.main.editco.dao.repositories.VersionHistoryRepository;
+import com.main.editco.dto.KeysetCursor;
+import com.main.editco.dto.VersionSummary;
+import com.main.editco.util.TextDelta;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+@Slf4j
 @Service
 public class VersionHistoryService {
     @Autowired VersionHistoryRepository versionHistoryRepository;
 
-    public List<VersionHistory> getVersionHistory(Long documentId) {
-        return versionHistoryRepository.findByDocumentIdOrderByTimestampDesc(documentId);
+    private static final int PREVIEW_LENGTH = 160;
+
+    @Value("${history.keyframe-interval:20}")
+    private int keyframeInterval;
+    @Value("${history.max-delta-ratio:0.5}")
+    private double maxDeltaRatio;
+
+    @Transactional(readOnly = true)
+    public List<VersionSummary> getVersionSummaries(Long documentId, KeysetCursor before, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        if (before == null) {
+            return versionHistoryRepository.findSummaries(documentId, page);
+        }
+        return versionHistoryRepository.findSummariesBefore(documentId, before.timestamp(), before.id(), page);
     }
+
+    // Stores the new version as a delta against the latest one, or as a keyframe every
+    // keyframeInterval versions and whenever the delta would not be much smaller than the text
+    @Transactional
     public VersionHistory addVersionHistory(VersionHistory versionHistory) {
+        Long documentId = versionHistory.getDocument().getId();
+        String content = versionHistory.getContent() == null ? "" : versionHistory.getContent();
         versionHistory.setTimestamp(Instant.now());
-        return versionHistoryRepository.save(versionHistory);
+        versionHistory.setContentLength(content.length());
+        versionHistory.setPreview(content.length() <= PREVIEW_LENGTH ? content : content.substring(0, PREVIEW_LENGTH));
+
+        VersionHistory previous = versionHistoryRepository.findFirstByDocumentIdOrderByIdDesc(documentId);
+        String delta = null;
+        int depth = previous == null || previous.getChainDepth() == null ? 0 : previous.getChainDepth();
+        if (previous != null && depth + 1 < keyframeInterval) {
+            String candidate = TextDelta.encode(reconstruct(previous), content);
+            if (candidate.length() <= maxDeltaRatio * content.length()) {
+                delta = candidate;
+            }
+        }
+        if (delta == null) {
+            versionHistory.setContent(content);
+            versionHistory.setDelta(null);
+            versionHistory.setBaseVersionId(null);
+            versionHistory.setKeyframeId(null);
+            versionHistory.setChainDepth(0);
+        } else {
+            versionHistory.setContent(null);
+            versionHistory.setDelta(delta);
+            versionHistory.setBaseVersionId(previous.getId());
+            versionHistory.setKeyframeId(previous.isKeyframe() ? previous.getId() : previous.getKeyframeId());
+            versionHistory.setChainDepth(depth + 1);
+        }
+        VersionHistory saved = versionHistoryRepository.save(versionHistory);
+        log.debug("Stored version {} of document {} as {} ({} chars)", saved.getId(), documentId,
+                saved.isKeyframe() ? "keyframe" : "delta", saved.isKeyframe() ? content.length() : delta.length());
+        return withContent(saved, content);
     }
+
+    @Transactional(readOnly = true)
+    public Optional<Long> getDocumentId(Long versionId) {
+        return versionHistoryRepository.findDocumentIdById(versionId);
+    }
+
+    @Transactional(readOnly = true)
     public Optional<VersionHistory> getVersion(Long versionId) {
-        return versionHistoryRepository.findById(versionId);
+        return versionHistoryRepository.findById(versionId)
+                .map(version -> withContent(version, reconstruct(version)));
+    }
+
+    // Replays deltas forward from the nearest keyframe, at most keyframeInterval of them
+    private String reconstruct(VersionHistory version) {
+        if (version.isKeyframe()) {
+            return version.getContent();
+        }
+        Map<Long, String> contents = new HashMap<>();
+        for (VersionHistory link : versionHistoryRepository.findChain(version.getKeyframeId(), version.getId())) {
+            contents.put(link.getId(), rebuild(link, contents));
+        }
+        return contents.get(version.getId());
+    }
+
+    private static String rebuild(VersionHistory version, Map<Long, String> contents) {
+        if (version.isKeyframe()) {
+            return version.getContent();
+        }
+        String base = contents.get(version.getBaseVersionId());
+        if (base == null) {
+            throw new IllegalStateException("Base version " + version.getBaseVersionId() + " of version " + version.getId() + " is missing");
+        }
+        return TextDelta.apply(base, version.getDelta());
+    }
+
+    // Detached copy with the full text filled in, so the stored row is never modified
+    private static VersionHistory withContent(VersionHistory version, String content) {
+        VersionHistory copy = new VersionHistory();
+        copy.setId(version.getId());
+        copy.setDocument(version.getDocument());
+        copy.setEditedBy(version.getEditedBy());
+        copy.setTimestamp(version.getTimestamp());
+        copy.setContent(content);
+        copy.setContentLength(content == null ? null : content.length());
+        return copy;
     }
 }
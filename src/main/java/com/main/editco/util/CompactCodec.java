@@ -0,0 +1,143 @@
+package com.main.editco.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Compact binary form of the JSON collaboration messages: CBOR, with the strings repeated in every
+// frame (session ids, emails, user ids, names and colors) interned per connection. The first frame
+// that uses a string defines it under "$d" as {"<id>": "<string>"}; later frames carry only the
+// integer. Interned fields are always strings in JSON, so an integer there is a reference.
+// One instance per connection and direction; frames must be decoded in the order they were encoded.
+public final class CompactCodec {
+    // octet-stream, so STOMP sends it as a binary WebSocket frame
+    public static final MimeType MIME_TYPE = new MimeType("application", "octet-stream", Map.of("format", "cbor"));
+    public static final String DEFINITIONS = "$d";
+    // set on frames that bypass the broker's ordered delivery; they are encoded without references
+    public static final String INLINE_HEADER = "compactInline";
+
+    static final Set<String> INTERNED_FIELDS = Set.of("sessionId", "email", "userId", "userName", "userColor");
+    private static final ObjectMapper CBOR = new CBORMapper();
+
+    private final int capacity;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<Integer, String> strings = new HashMap<>();
+
+    // capacity bounds the table; once full, new strings are sent inline
+    public CompactCodec(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public static ObjectMapper mapper() {
+        return CBOR;
+    }
+
+    public static byte[] encodeInline(JsonNode message) throws IOException {
+        return CBOR.writeValueAsBytes(message);
+    }
+
+    // Streams the tree straight into CBOR; definitions are collected on the way and written last.
+    // A frame that fails is never sent, so the ids it assigned are taken back.
+    public synchronized byte[] encode(JsonNode message) throws IOException {
+        if (!message.isObject()) {
+            return encodeInline(message);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        Map<String, String> definitions = new LinkedHashMap<>();
+        try (JsonGenerator generator = CBOR.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            writeFields(generator, message, definitions);
+            if (!definitions.isEmpty()) {
+                generator.writeObjectFieldStart(DEFINITIONS);
+                for (Map.Entry<String, String> definition : definitions.entrySet()) {
+                    generator.writeStringField(definition.getKey(), definition.getValue());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException | RuntimeException e) {
+            definitions.values().forEach(ids::remove);
+            throw e;
+        }
+        return out.toByteArray();
+    }
+
+    public synchronized JsonNode decode(byte[] frame) throws IOException {
+        JsonNode message = CBOR.readTree(frame);
+        if (message.isObject() && message.get(DEFINITIONS) instanceof ObjectNode definitions) {
+            definitions.properties().forEach(entry -> strings.put(Integer.valueOf(entry.getKey()), entry.getValue().asText()));
+            ((ObjectNode) message).remove(DEFINITIONS);
+        }
+        resolve(message);
+        return message;
+    }
+
+    private void writeFields(JsonGenerator generator, JsonNode object, Map<String, String> definitions) throws IOException {
+        for (Map.Entry<String, JsonNode> field : object.properties()) {
+            generator.writeFieldName(field.getKey());
+            JsonNode value = field.getValue();
+            Integer id = value.isTextual() && INTERNED_FIELDS.contains(field.getKey())
+                    ? id(value.textValue(), definitions) : null;
+            if (id != null) {
+                generator.writeNumber(id);
+            } else {
+                write(generator, value, definitions);
+            }
+        }
+    }
+
+    private void write(JsonGenerator generator, JsonNode node, Map<String, String> definitions) throws IOException {
+        if (node.isObject()) {
+            generator.writeStartObject();
+            writeFields(generator, node, definitions);
+            generator.writeEndObject();
+        } else if (node.isArray()) {
+            generator.writeStartArray();
+            for (JsonNode element : node) {
+                write(generator, element, definitions);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeTree(node);
+        }
+    }
+
+    private Integer id(String value, Map<String, String> definitions) {
+        Integer id = ids.get(value);
+        if (id == null && ids.size() < capacity) {
+            id = ids.size() + 1;
+            ids.put(value, id);
+            definitions.put(String.valueOf(id), value);
+        }
+        return id;
+    }
+
+    private void resolve(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            for (Map.Entry<String, JsonNode> field : object.properties()) {
+                if (field.getValue().isInt() && INTERNED_FIELDS.contains(field.getKey())) {
+                    String value = strings.get(field.getValue().intValue());
+                    if (value == null) {
+                        throw new IllegalStateException("Unknown reference " + field.getValue() + " in " + field.getKey());
+                    }
+                    field.setValue(TextNode.valueOf(value));
+                } else {
+                    resolve(field.getValue());
+                }
+            }
+        } else if (node.isArray()) {
+            node.forEach(this::resolve);
+        }
+    }
+}
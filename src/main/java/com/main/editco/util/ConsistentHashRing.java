@@ -0,0 +1,62 @@
+package com.main.editco.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Immutable consistent-hash ring of node ids. Every node is placed at several virtual points so keys
+// spread evenly, and adding or removing a node only moves the keys that land next to its points.
+// Two rings built from the same node ids always agree on every owner.
+public final class ConsistentHashRing {
+    private final SortedSet<String> nodes;
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = new TreeSet<>(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // on the (unlikely) collision the smaller node id wins, whatever the insertion order
+                points.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    // Owner of key, or null for an empty ring
+    public String owner(long key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(mix(key));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    public SortedSet<String> nodes() {
+        return nodes;
+    }
+
+    // FNV-1a over the UTF-8 bytes, then mixed so neighbouring names do not land on neighbouring points
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", nodes);
+    }
+}
@@ -0,0 +1,51 @@
+package com.main.editco.util;
+
+// Strong entity tags and the two ways a conditional request compares them (RFC 9110 section 8.8.3)
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(Object... parts) {
+        StringBuilder tag = new StringBuilder("\"");
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                tag.append('.');
+            }
+            tag.append(parts[i]);
+        }
+        return tag.append('"').toString();
+    }
+
+    // If-None-Match uses the weak comparison: a W/ prefix on the client's tag is ignored
+    public static boolean noneMatchFails(String ifNoneMatch, String etag) {
+        return anyMatches(ifNoneMatch, etag, false);
+    }
+
+    // If-Match uses the strong comparison: weak tags never match
+    public static boolean matchHolds(String ifMatch, String etag) {
+        return ifMatch == null || anyMatches(ifMatch, etag, true);
+    }
+
+    private static boolean anyMatches(String header, String etag, boolean strong) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                if (strong) {
+                    continue;
+                }
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
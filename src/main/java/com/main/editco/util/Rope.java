@@ -0,0 +1,233 @@
+package com.main.editco.util;
+
+// Height-balanced rope of text chunks. Positional insert, delete and substring cost O(log n)
+// instead of copying the whole text; the flat String is only built (and cached) when asked for.
+// Not thread-safe, callers guard it the same way they would guard a StringBuilder.
+public class Rope implements CharSequence {
+    static final int MAX_LEAF = 256;
+    private static final Node EMPTY = new Leaf("");
+
+    private Node root;
+    private String flattened;
+
+    public Rope() {
+        this("");
+    }
+
+    public Rope(String text) {
+        this.root = build(text, 0, text.length());
+        this.flattened = text;
+    }
+
+    @Override
+    public int length() {
+        return root.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        checkBounds(index, index + 1);
+        Node node = root;
+        while (node instanceof Branch branch) {
+            if (index < branch.left.length()) {
+                node = branch.left;
+            } else {
+                index -= branch.left.length();
+                node = branch.right;
+            }
+        }
+        return ((Leaf) node).text.charAt(index);
+    }
+
+    public void insert(int position, String text) {
+        replace(position, 0, text);
+    }
+
+    public void delete(int position, int length) {
+        replace(position, length, "");
+    }
+
+    public void replace(int position, int length, String text) {
+        checkBounds(position, position + length);
+        if (length == 0 && text.isEmpty()) {
+            return;
+        }
+        Node[] head = split(root, position);
+        Node[] tail = split(head[1], length);
+        root = join(join(head[0], build(text, 0, text.length())), tail[1]);
+        flattened = null;
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    public String substring(int start, int end) {
+        checkBounds(start, end);
+        if (flattened != null) {
+            return flattened.substring(start, end);
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        append(root, start, end, builder);
+        return builder.toString();
+    }
+
+    int height() {
+        return root.height();
+    }
+
+    @Override
+    public String toString() {
+        if (flattened == null) {
+            StringBuilder builder = new StringBuilder(root.length());
+            append(root, 0, root.length(), builder);
+            flattened = builder.toString();
+        }
+        return flattened;
+    }
+
+    private void checkBounds(int start, int end) {
+        if (start < 0 || end < start || end > root.length()) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") outside rope of length " + root.length());
+        }
+    }
+
+    private static void append(Node node, int start, int end, StringBuilder builder) {
+        if (start >= end) {
+            return;
+        }
+        if (node instanceof Leaf leaf) {
+            builder.append(leaf.text, start, end);
+            return;
+        }
+        Branch branch = (Branch) node;
+        int leftLength = branch.left.length();
+        if (start < leftLength) {
+            append(branch.left, start, Math.min(end, leftLength), builder);
+        }
+        if (end > leftLength) {
+            append(branch.right, Math.max(0, start - leftLength), end - leftLength, builder);
+        }
+    }
+
+    private static Node build(String text, int start, int end) {
+        if (end - start <= MAX_LEAF) {
+            return start == end ? EMPTY : new Leaf(text.substring(start, end));
+        }
+        int middle = (start + end) >>> 1;
+        return new Branch(build(text, start, middle), build(text, middle, end));
+    }
+
+    private static Node[] split(Node node, int index) {
+        if (index == 0) {
+            return new Node[]{EMPTY, node};
+        }
+        if (index == node.length()) {
+            return new Node[]{node, EMPTY};
+        }
+        if (node instanceof Leaf leaf) {
+            return new Node[]{new Leaf(leaf.text.substring(0, index)), new Leaf(leaf.text.substring(index))};
+        }
+        Branch branch = (Branch) node;
+        int leftLength = branch.left.length();
+        if (index <= leftLength) {
+            Node[] parts = split(branch.left, index);
+            return new Node[]{parts[0], join(parts[1], branch.right)};
+        }
+        Node[] parts = split(branch.right, index - leftLength);
+        return new Node[]{join(branch.left, parts[0]), parts[1]};
+    }
+
+    // AVL join: descends the spine of the taller side so the result stays height-balanced
+    private static Node join(Node left, Node right) {
+        if (left.length() == 0) {
+            return right;
+        }
+        if (right.length() == 0) {
+            return left;
+        }
+        if (left instanceof Leaf l && right instanceof Leaf r && l.length() + r.length() <= MAX_LEAF) {
+            return new Leaf(l.text + r.text);
+        }
+        if (left.height() > right.height() + 1) {
+            Branch branch = (Branch) left;
+            return balance(new Branch(branch.left, join(branch.right, right)));
+        }
+        if (right.height() > left.height() + 1) {
+            Branch branch = (Branch) right;
+            return balance(new Branch(join(left, branch.left), branch.right));
+        }
+        return new Branch(left, right);
+    }
+
+    private static Node balance(Branch node) {
+        if (node.left.height() > node.right.height() + 1) {
+            Branch left = (Branch) node.left;
+            if (left.left.height() < left.right.height()) {
+                left = rotateLeft(left);
+            }
+            return rotateRight(new Branch(left, node.right));
+        }
+        if (node.right.height() > node.left.height() + 1) {
+            Branch right = (Branch) node.right;
+            if (right.right.height() < right.left.height()) {
+                right = rotateRight(right);
+            }
+            return rotateLeft(new Branch(node.left, right));
+        }
+        return node;
+    }
+
+    private static Branch rotateRight(Branch node) {
+        Branch left = (Branch) node.left;
+        return new Branch(left.left, new Branch(left.right, node.right));
+    }
+
+    private static Branch rotateLeft(Branch node) {
+        Branch right = (Branch) node.right;
+        return new Branch(new Branch(node.left, right.left), right.right);
+    }
+
+    private interface Node {
+        int length();
+
+        int height();
+    }
+
+    private record Leaf(String text) implements Node {
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public int height() {
+            return 0;
+        }
+    }
+
+    private static final class Branch implements Node {
+        private final Node left;
+        private final Node right;
+        private final int length;
+        private final int height;
+
+        private Branch(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+            this.length = left.length() + right.length();
+            this.height = Math.max(left.height(), right.height()) + 1;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public int height() {
+            return height;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.main.editco.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Copy/insert delta between two texts. Encoded form is plain text so it fits a TEXT column:
+//   C<offset>,<length>;   copy length chars of the base starting at offset
+//   I<length>:<chars>     insert length literal chars
+public final class TextDelta {
+    private static final int BLOCK = 32;
+    private static final int HASH_BASE = 31;
+
+    private TextDelta() {
+    }
+
+    public static String encode(String base, String target) {
+        StringBuilder delta = new StringBuilder();
+        int max = Math.min(base.length(), target.length());
+        int prefix = 0;
+        while (prefix < max && base.charAt(prefix) == target.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && base.charAt(base.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix > 0) {
+            copy(delta, 0, prefix);
+        }
+        encodeMiddle(base, prefix, base.length() - suffix, target, prefix, target.length() - suffix, delta);
+        if (suffix > 0) {
+            copy(delta, base.length() - suffix, suffix);
+        }
+        return delta.toString();
+    }
+
+    public static String apply(String base, String delta) {
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < delta.length()) {
+            char op = delta.charAt(i++);
+            if (op == 'C') {
+                int comma = delta.indexOf(',', i);
+                int end = delta.indexOf(';', comma);
+                int offset = Integer.parseInt(delta, i, comma, 10);
+                int length = Integer.parseInt(delta, comma + 1, end, 10);
+                result.append(base, offset, offset + length);
+                i = end + 1;
+            } else if (op == 'I') {
+                int colon = delta.indexOf(':', i);
+                int length = Integer.parseInt(delta, i, colon, 10);
+                result.append(delta, colon + 1, colon + 1 + length);
+                i = colon + 1 + length;
+            } else {
+                throw new IllegalArgumentException("Corrupt delta at offset " + (i - 1));
+            }
+        }
+        return result.toString();
+    }
+
+    // Greedy block matching: base blocks are indexed by hash, target is scanned with a rolling hash
+    private static void encodeMiddle(String base, int baseStart, int baseEnd,
+                                     String target, int targetStart, int targetEnd, StringBuilder delta) {
+        if (targetEnd - targetStart < BLOCK || baseEnd - baseStart < BLOCK) {
+            insert(delta, target, targetStart, targetEnd);
+            return;
+        }
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int offset = baseStart; offset + BLOCK <= baseEnd; offset += BLOCK) {
+            blocks.putIfAbsent(hash(base, offset), offset);
+        }
+        int highPower = 1;
+        for (int k = 1; k < BLOCK; k++) {
+            highPower *= HASH_BASE;
+        }
+
+        int literalStart = targetStart;
+        int i = targetStart;
+        int hash = hash(target, i);
+        while (i + BLOCK <= targetEnd) {
+            Integer offset = blocks.get(hash);
+            if (offset != null && base.regionMatches(offset, target, i, BLOCK)) {
+                int matchBase = offset;
+                int matchTarget = i;
+                while (matchBase > baseStart && matchTarget > literalStart
+                        && base.charAt(matchBase - 1) == target.charAt(matchTarget - 1)) {
+                    matchBase--;
+                    matchTarget--;
+                }
+                int end = i + BLOCK;
+                int baseCursor = offset + BLOCK;
+                while (end < targetEnd && baseCursor < baseEnd && base.charAt(baseCursor) == target.charAt(end)) {
+                    end++;
+                    baseCursor++;
+                }
+                insert(delta, target, literalStart, matchTarget);
+                copy(delta, matchBase, end - matchTarget);
+                literalStart = end;
+                i = end;
+                if (i + BLOCK <= targetEnd) {
+                    hash = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < targetEnd) {
+                hash = (hash - target.charAt(i) * highPower) * HASH_BASE + target.charAt(i + BLOCK);
+            }
+            i++;
+        }
+        insert(delta, target, literalStart, targetEnd);
+    }
+
+    private static int hash(String text, int offset) {
+        int hash = 0;
+        for (int k = 0; k < BLOCK; k++) {
+            hash = hash * HASH_BASE + text.charAt(offset + k);
+        }
+        return hash;
+    }
+
+    private static void copy(StringBuilder delta, int offset, int length) {
+        delta.append('C').append(offset).append(',').append(length).append(';');
+    }
+
+    private static void insert(StringBuilder delta, String text, int start, int end) {
+        if (end > start) {
+            delta.append('I').append(end - start).append(':').append(text, start, end);
+        }
+    }
+}
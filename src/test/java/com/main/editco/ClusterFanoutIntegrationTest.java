@@ -0,0 +1,100 @@
+package com.main.editco;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Two application instances in one JVM joined by the loopback fan-out: a broadcast published on
+// one node reaches a subscriber on the other, and the extra hop's latency is printed
+// when run with -Dbenchmarks=true.
+class ClusterFanoutIntegrationTest {
+    private static final String DESTINATION = "/topic/document/42/updates";
+    private static final int BROADCASTS = 200;
+
+    @Test
+    void deliversBroadcastsToSubscribersOnOtherNodes() throws Exception {
+        try (ConfigurableApplicationContext a = node("a"); ConfigurableApplicationContext b = node("b")) {
+            BlockingQueue<Message<?>> onA = subscribe(a, DESTINATION);
+            BlockingQueue<Message<?>> onB = subscribe(b, DESTINATION);
+            BlockingQueue<Message<?>> otherDocumentOnA = subscribe(a, "/topic/document/43/updates");
+            SimpMessagingTemplate publisher = b.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class);
+
+            long local = 0;
+            long remote = 0;
+            for (int i = 0; i < BROADCASTS; i++) {
+                long start = System.nanoTime();
+                publisher.convertAndSend(DESTINATION, Map.of("revision", i));
+                Message<?> mine = onB.poll(5, TimeUnit.SECONDS);
+                local += System.nanoTime() - start;
+                Message<?> relayed = onA.poll(5, TimeUnit.SECONDS);
+                remote += System.nanoTime() - start;
+                assertNotNull(mine);
+                assertNotNull(relayed, "broadcast " + i + " did not reach the other node");
+                assertEquals("{\"revision\":" + i + "}", new String((byte[]) relayed.getPayload(), StandardCharsets.UTF_8));
+            }
+            // relayed broadcasts are not sent back, and other documents' subscribers see nothing
+            assertNull(onB.poll(200, TimeUnit.MILLISECONDS));
+            assertNull(otherDocumentOnA.poll(0, TimeUnit.MILLISECONDS));
+            if (Boolean.getBoolean("benchmarks")) {
+                System.out.printf("cross-node delivery: local %,d us, other node %,d us per broadcast%n",
+                        local / BROADCASTS / 1_000, remote / BROADCASTS / 1_000);
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext node(String name) {
+        // arguments rather than default properties, so they win over application.properties
+        return new SpringApplicationBuilder(CoEditApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:node-" + name,
+                "--spring.jpa.show-sql=false",
+                // each node keeps its meters in its own registry rather than the JVM-wide global one
+                "--management.metrics.use-global-registry=false",
+                "--collab.cluster.fanout=loopback",
+                "--collab.cluster.node-id=" + name);
+    }
+
+    // Registers a broker subscription for a fake session and collects what the broker sends it
+    private static BlockingQueue<Message<?>> subscribe(ConfigurableApplicationContext node, String destination)
+            throws InterruptedException {
+        String sessionId = "test-" + destination;
+        BlockingQueue<Message<?>> received = new LinkedBlockingQueue<>();
+        node.getBean("clientOutboundChannel", SubscribableChannel.class).subscribe(message -> {
+            if (sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+                received.add(message);
+            }
+        });
+        SimpleBrokerMessageHandler broker = node.getBean(SimpleBrokerMessageHandler.class);
+        // the broker only delivers to sessions it saw connect
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[]{0, 0});
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+        Message<?> connected = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(connected);
+        assertEquals(SimpMessageType.CONNECT_ACK, SimpMessageHeaderAccessor.getMessageType(connected.getHeaders()));
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        return received;
+    }
+}
@@ -0,0 +1,414 @@
+package com.main.editco;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.editco.dao.entities.AccessType;
+import com.main.editco.dao.entities.Document;
+import com.main.editco.dao.entities.Permission;
+import com.main.editco.dao.entities.User;
+import com.main.editco.dao.repositories.DocumentRepository;
+import com.main.editco.dao.repositories.UserRepository;
+import com.main.editco.dto.CurrentUser;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.DocumentVersion;
+import com.main.editco.dto.UserPresenceMessage;
+import com.main.editco.service.AccessControlIndex;
+import com.main.editco.service.ClusterMembership;
+import com.main.editco.service.DocumentAffinityRouter;
+import com.main.editco.service.DocumentService;
+import com.main.editco.service.DocumentSessionService;
+import com.main.editco.service.DocumentTopics;
+import com.main.editco.service.PermissionService;
+import com.main.editco.service.PreconditionFailedException;
+import com.main.editco.service.PresenceRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Several application instances in one JVM sharing a database and the loopback fan-out: every
+// document has exactly one owner, and edits sent through one node keep getting applied, in
+// revision order, while a node joins and the owner of some documents leaves. Access changes and
+// presence are shared between the nodes as well.
+class DocumentAffinityIntegrationTest {
+    private static final int DOCUMENTS = 24;
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Test
+    void routesEditsToTheSingleOwnerWhileNodesJoinAndLeave() throws Exception {
+        List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+        try {
+            ConfigurableApplicationContext a = node("a");
+            nodes.add(a);
+            nodes.add(node("b"));
+            ConfigurableApplicationContext c = node("c");
+            nodes.add(c);
+            awaitRing(nodes, Set.of("a", "b", "c"));
+            List<Long> documents = createDocuments(a);
+            Map<Long, BlockingQueue<DocumentEditMessage>> broadcasts = subscribe(a, documents);
+
+            // edits from a, one outstanding per document, each based on the last broadcast revision
+            Map<Long, Long> revisions = new ConcurrentHashMap<>();
+            documents.forEach(id -> revisions.put(id, 0L));
+            AtomicBoolean editing = new AtomicBoolean(true);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread editor = new Thread(() -> {
+                try {
+                    while (editing.get()) {
+                        for (Long id : documents) {
+                            revisions.put(id, edit(a, id, revisions.get(id), broadcasts.get(id)));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            editor.start();
+            awaitEdits(revisions, 3, failure);
+            assertSingleOwner(nodes, documents);
+
+            ConfigurableApplicationContext d = node("d");
+            nodes.add(d);
+            awaitRing(nodes, Set.of("a", "b", "c", "d"));
+            awaitEdits(revisions, 6, failure);
+            assertTrue(documents.stream().anyMatch(id -> owns(d, id)), "d took over no document");
+
+            List<Long> ownedByC = documents.stream().filter(id -> owns(c, id)).toList();
+            assertFalse(ownedByC.isEmpty(), "c owned no document");
+            Map<Long, Long> beforeLeaving = new HashMap<>(revisions);
+            nodes.remove(c);
+            c.close();
+            awaitRing(nodes, Set.of("a", "b", "d"));
+            // the editor goes round every document, so all of them are within one revision of each other
+            awaitEdits(revisions, Math.max(9, Collections.max(beforeLeaving.values()) + 3), failure);
+
+            editing.set(false);
+            editor.join(10_000);
+            assertNull(failure.get());
+            assertSingleOwner(nodes, documents);
+            for (Long id : documents) {
+                // every edit was applied exactly once: one character per revision
+                Document live = owner(nodes, id).getBean(DocumentSessionService.class).snapshot(id).orElseThrow();
+                assertEquals(revisions.get(id), (long) live.getContent().length(), "document " + id);
+            }
+            for (Long id : ownedByC) {
+                // the documents that moved off the leaving node kept taking edits on their new owner
+                assertTrue(revisions.get(id) > beforeLeaving.get(id), "document " + id + " stalled after moving");
+            }
+        } finally {
+            nodes.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    @Test
+    void sharesAccessChangesWithTheOtherNodes() throws Exception {
+        List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+        try {
+            ConfigurableApplicationContext a = node("acl-a");
+            nodes.add(a);
+            ConfigurableApplicationContext b = node("acl-b");
+            nodes.add(b);
+            awaitRing(nodes, Set.of("acl-a", "acl-b"));
+            UserRepository users = a.getBean(UserRepository.class);
+            User owner = users.save(new User(null, "acl-owner@example.com", "x", "Owner", "USER", null, null, null));
+            User reader = users.save(new User(null, "acl-reader@example.com", "x", "Reader", "USER", null, null, null));
+            AccessControlIndex remote = b.getBean(AccessControlIndex.class);
+
+            Document document = new Document();
+            document.setTitle("shared");
+            document.setContent("");
+            document.setOwner(owner);
+            Long id = a.getBean(DocumentService.class).createDocument(document).getId();
+            await(() -> remote.isOwner(owner.getId(), id), "creation");
+            assertFalse(remote.canView(reader.getId(), id));
+
+            Permission permission = a.getBean(PermissionService.class)
+                    .grantPermission(new Permission(null, document, reader, AccessType.VIEWER));
+            await(() -> remote.canView(reader.getId(), id), "grant");
+            assertFalse(remote.canEdit(reader.getId(), id));
+            a.getBean(PermissionService.class).grantPermission(new Permission(null, document, reader, AccessType.EDITOR));
+            await(() -> remote.canEdit(reader.getId(), id), "upgrade");
+
+            a.getBean(PermissionService.class).revokePermission(permission.getId());
+            await(() -> !remote.canView(reader.getId(), id), "revoke");
+
+            a.getBean(DocumentService.class).deleteDocument(id);
+            await(() -> !remote.isOwner(owner.getId(), id), "deletion");
+        } finally {
+            nodes.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    @Test
+    void restWritesOnAnyNodeGoThroughTheOwnersSession() throws Exception {
+        List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+        try {
+            nodes.add(node("rest-a"));
+            nodes.add(node("rest-b"));
+            awaitRing(nodes, Set.of("rest-a", "rest-b"));
+            User owner = nodes.get(0).getBean(UserRepository.class).save(new User(null, "rest-owner@example.com", "x",
+                    "Owner", "USER", null, null, null));
+            Document document = new Document();
+            document.setTitle("draft");
+            document.setContent("");
+            document.setOwner(owner);
+            Long id = nodes.get(0).getBean(DocumentService.class).createDocument(document).getId();
+            ConfigurableApplicationContext ownerNode = owner(nodes, id);
+            ConfigurableApplicationContext other = nodes.get(0) == ownerNode ? nodes.get(1) : nodes.get(0);
+
+            // a live session on the owner, then writes arriving at the other node
+            edit(ownerNode, id, 0, subscribe(ownerNode, List.of(id)).get(id));
+            DocumentService service = other.getBean(DocumentService.class);
+            DocumentVersion first = service.patchDocument(id, "first", null, null).orElseThrow();
+            DocumentVersion renamed = service.patchDocument(id, "renamed", null, first.etag()).orElseThrow();
+            // each rename gets its own tag, so the first one no longer matches
+            assertNotEquals(first.etag(), renamed.etag());
+            assertThrows(PreconditionFailedException.class, () -> service.patchDocument(id, "lost", null, first.etag()));
+            Document rewritten = service.updateDocument(id, document("renamed", "rewritten"),
+                    renamed.etag()).orElseThrow();
+            assertEquals("rewritten", rewritten.getContent());
+            String stale = renamed.etag();
+            assertThrows(PreconditionFailedException.class, () -> service.patchDocument(id, "lost", null, stale));
+
+            ownerNode.getBean(DocumentSessionService.class).flushSessions();
+            Document row = ownerNode.getBean(DocumentRepository.class).findById(id).orElseThrow();
+            assertEquals("renamed", row.getTitle());
+            assertEquals("rewritten", row.getContent());
+            // a content-only write moves the row version as well, so a stale writer cannot match it
+            assertTrue(row.getVersion() > renamed.version());
+            // flushing moves neither tag, so a client holding it can keep writing
+            assertEquals(DocumentVersion.of(rewritten), DocumentVersion.of(row));
+            assertEquals(DocumentVersion.of(rewritten),
+                    ownerNode.getBean(DocumentService.class).getDocumentVersion(id).orElseThrow());
+        } finally {
+            nodes.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    @Test
+    void sharesPresenceBetweenNodes() throws Exception {
+        List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+        try {
+            ConfigurableApplicationContext a = node("presence-a");
+            nodes.add(a);
+            ConfigurableApplicationContext b = node("presence-b");
+            nodes.add(b);
+            awaitRing(nodes, Set.of("presence-a", "presence-b"));
+            PresenceRegistry onA = a.getBean(PresenceRegistry.class);
+            PresenceRegistry onB = b.getBean(PresenceRegistry.class);
+            onA.join(7L, "session-a", "sub-0", new CurrentUser(1L, "one@example.com", "One"));
+            onB.join(7L, "session-b", "sub-0", new CurrentUser(2L, "two@example.com", "Two"));
+            await(() -> present(onA, 7L).equals(Set.of("1", "2")) && present(onB, 7L).equals(Set.of("1", "2")), "presence");
+
+            // a node that joins later learns who is already there
+            ConfigurableApplicationContext c = node("presence-c");
+            nodes.add(c);
+            awaitRing(nodes, Set.of("presence-a", "presence-b", "presence-c"));
+            PresenceRegistry onC = c.getBean(PresenceRegistry.class);
+            await(() -> present(onC, 7L).equals(Set.of("1", "2")), "existing presence");
+
+            // a user with sessions on two nodes stays present while one of them is left; user 3
+            // arrives on a after user 1 left it, so b has seen the departure once it sees user 3
+            onC.join(7L, "session-c", "sub-0", new CurrentUser(1L, "one@example.com", "One"));
+            onA.disconnect("session-a");
+            onA.join(7L, "session-a2", "sub-0", new CurrentUser(3L, "three@example.com", "Three"));
+            await(() -> present(onB, 7L).contains("3"), "arrival");
+            assertEquals(Set.of("1", "2", "3"), present(onB, 7L));
+
+            // a node that leaves the ring takes its users with it
+            nodes.remove(b);
+            b.close();
+            await(() -> present(onA, 7L).equals(Set.of("1", "3")), "departure of node b");
+        } finally {
+            nodes.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    private static Set<String> present(PresenceRegistry registry, Long documentId) {
+        return registry.present(documentId).stream().map(UserPresenceMessage::getUserId).collect(Collectors.toSet());
+    }
+
+    private static Document document(String title, String content) {
+        Document document = new Document();
+        document.setTitle(title);
+        document.setContent(content);
+        return document;
+    }
+
+    private static void await(BooleanSupplier condition, String change) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, change + " did not reach the other node");
+            Thread.sleep(20);
+        }
+    }
+
+    // Sends an edit the way WebSocketController does and returns the revision it was broadcast with
+    private static long edit(ConfigurableApplicationContext node, Long documentId, long baseRevision,
+                             BlockingQueue<DocumentEditMessage> broadcasts) throws InterruptedException {
+        DocumentEditMessage edit = new DocumentEditMessage();
+        edit.setOperation("insert");
+        edit.setCursorPosition(0);
+        edit.setChangeContent("x");
+        edit.setBaseRevision(baseRevision);
+        edit.setSessionId("editor");
+        edit.setTimestamp(System.currentTimeMillis());
+        DocumentEditMessage applied = node.getBean(DocumentAffinityRouter.class).applyOrForward(documentId, edit, null);
+        if (applied != null) {
+            // what @SendTo does with the controller's return value
+            node.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class)
+                    .convertAndSend(DocumentTopics.topic(documentId, DocumentTopics.UPDATES), applied);
+        }
+        DocumentEditMessage broadcast = broadcasts.poll(10, TimeUnit.SECONDS);
+        assertNotNull(broadcast, "edit of document " + documentId + " on revision " + baseRevision + " was lost");
+        assertEquals(baseRevision + 1, broadcast.getRevision(), "document " + documentId);
+        return broadcast.getRevision();
+    }
+
+    private static void awaitEdits(Map<Long, Long> revisions, long atLeast, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (revisions.values().stream().anyMatch(revision -> revision < atLeast)) {
+            if (failure.get() != null) {
+                fail(failure.get());
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "edits stopped flowing");
+            Thread.sleep(20);
+        }
+    }
+
+    private static void assertSingleOwner(List<ConfigurableApplicationContext> nodes, List<Long> documents) {
+        for (Long id : documents) {
+            ConfigurableApplicationContext owner = owner(nodes, id);
+            for (ConfigurableApplicationContext node : nodes) {
+                boolean open = node.getBean(DocumentSessionService.class).openDocuments().contains(id);
+                assertEquals(node == owner, open, "session of document " + id + " on " + nodeId(node));
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext owner(List<ConfigurableApplicationContext> nodes, Long documentId) {
+        List<ConfigurableApplicationContext> owners = nodes.stream().filter(node -> owns(node, documentId)).toList();
+        assertEquals(1, owners.size(), "owners of document " + documentId);
+        return owners.get(0);
+    }
+
+    private static boolean owns(ConfigurableApplicationContext node, Long documentId) {
+        return node.getBean(DocumentAffinityRouter.class).owns(documentId);
+    }
+
+    private static String nodeId(ConfigurableApplicationContext node) {
+        return node.getBean(ClusterMembership.class).nodeId();
+    }
+
+    private static void awaitRing(List<ConfigurableApplicationContext> nodes, Set<String> expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!nodes.stream().allMatch(node -> node.getBean(ClusterMembership.class).ring().nodes().equals(expected))) {
+            assertTrue(System.currentTimeMillis() < deadline, "ring did not converge to " + expected);
+            Thread.sleep(20);
+        }
+    }
+
+    private static ConfigurableApplicationContext node(String name) {
+        // arguments rather than default properties, so they win over application.properties
+        return new SpringApplicationBuilder(CoEditApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:affinity;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=update",
+                "--spring.jpa.show-sql=false",
+                "--collab.cluster.fanout=loopback",
+                "--collab.cluster.node-id=" + name,
+                "--collab.cluster.heartbeat-ms=200",
+                "--collab.cluster.node-timeout-ms=2000",
+                "--collab.cluster.leave-grace-ms=200");
+    }
+
+    private static List<Long> createDocuments(ConfigurableApplicationContext node) {
+        User user = node.getBean(UserRepository.class).save(new User(null, "owner@example.com", "x", "Owner", "USER",
+                null, null, null));
+        DocumentRepository repository = node.getBean(DocumentRepository.class);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Document document = new Document();
+            document.setTitle("doc " + i);
+            document.setContent("");
+            document.setOwner(user);
+            document.setCreatedAt(Instant.now());
+            document.setUpdatedAt(Instant.now());
+            ids.add(repository.save(document).getId());
+        }
+        return ids;
+    }
+
+    // Registers broker subscriptions of one fake session to the documents' updates and splits what
+    // the broker sends it by document
+    private static Map<Long, BlockingQueue<DocumentEditMessage>> subscribe(ConfigurableApplicationContext node,
+                                                                           List<Long> documents) throws InterruptedException {
+        String sessionId = "test-session";
+        Map<Long, BlockingQueue<DocumentEditMessage>> received = new HashMap<>();
+        documents.forEach(id -> received.put(id, new LinkedBlockingQueue<>()));
+        BlockingQueue<Message<?>> control = new LinkedBlockingQueue<>();
+        node.getBean("clientOutboundChannel", SubscribableChannel.class).subscribe(message -> {
+            if (!sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+                return;
+            }
+            Long documentId = DocumentTopics.documentId(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            if (documentId == null) {
+                control.add(message);
+                return;
+            }
+            try {
+                received.get(documentId).add(JSON.readValue((byte[]) message.getPayload(), DocumentEditMessage.class));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        SimpleBrokerMessageHandler broker = node.getBean(SimpleBrokerMessageHandler.class);
+        // the broker only delivers to sessions it saw connect
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[]{0, 0});
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+        Message<?> connected = control.poll(5, TimeUnit.SECONDS);
+        assertNotNull(connected);
+        assertEquals(SimpMessageType.CONNECT_ACK, SimpMessageHeaderAccessor.getMessageType(connected.getHeaders()));
+        for (Long id : documents) {
+            SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            subscribe.setSessionId(sessionId);
+            subscribe.setSubscriptionId("sub-" + id);
+            subscribe.setDestination(DocumentTopics.topic(id, DocumentTopics.UPDATES));
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        }
+        return received;
+    }
+}
@@ -0,0 +1,96 @@
+package com.main.editco.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentSubscriptionRegistryTest {
+    private static final String[] CHANNELS = {"updates", "cursors", "presence"};
+
+    @Test
+    void indexesDocumentTopicsAndDelegatesTheRest() {
+        DocumentSubscriptionRegistry registry = new DocumentSubscriptionRegistry(new DefaultSubscriptionRegistry());
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "s1", "a", "/topic/document/7/updates"));
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "s1", "b", "/topic/document/7/cursors"));
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "s2", "a", "/topic/document/7/updates"));
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "s2", "q", "/user/queue/errors-users2"));
+
+        assertEquals(Map.of("s1", List.of("a"), "s2", List.of("a")), find(registry, "/topic/document/7/updates"));
+        assertEquals(Map.of("s1", List.of("b")), find(registry, "/topic/document/7/cursors"));
+        assertTrue(find(registry, "/topic/document/8/updates").isEmpty());
+        assertEquals(Map.of("s2", List.of("q")), find(registry, "/user/queue/errors-users2"));
+
+        registry.unregisterSubscription(message(SimpMessageType.UNSUBSCRIBE, "s1", "a", null));
+        assertEquals(Map.of("s2", List.of("a")), find(registry, "/topic/document/7/updates"));
+        registry.unregisterAllSubscriptions("s2");
+        assertTrue(find(registry, "/topic/document/7/updates").isEmpty());
+        assertTrue(find(registry, "/user/queue/errors-users2").isEmpty());
+        assertEquals(Map.of("s1", List.of("b")), find(registry, "/topic/document/7/cursors"));
+    }
+
+    // Run with -Dbenchmarks=true; prints the cost of one broadcast lookup for each registry.
+    // Ten sessions per document, each on all three channels; lookups hit random documents.
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkLookup() {
+        for (int subscriptions : new int[]{10_000, 100_000, 1_000_000}) {
+            DefaultSubscriptionRegistry spring = new DefaultSubscriptionRegistry();
+            DocumentSubscriptionRegistry indexed = new DocumentSubscriptionRegistry(new DefaultSubscriptionRegistry());
+            int documents = subscriptions / 30;
+            for (int i = 0; i < subscriptions; i++) {
+                int document = i % documents;
+                String destination = "/topic/document/" + document + "/" + CHANNELS[(i / documents) % 3];
+                Message<byte[]> subscribe = message(SimpMessageType.SUBSCRIBE, "session-" + (i / 3), "sub-" + i, destination);
+                spring.registerSubscription(subscribe);
+                indexed.registerSubscription(subscribe);
+            }
+            // warm both paths before timing
+            lookup(spring, documents, 200, 1);
+            lookup(indexed, documents, 200_000, 1);
+            System.out.printf("%,9d subscriptions  default %,12d ns/lookup  indexed %,6d ns/lookup%n", subscriptions,
+                    lookup(spring, documents, subscriptions >= 1_000_000 ? 200 : 2_000, 2), lookup(indexed, documents, 200_000, 2));
+        }
+    }
+
+    private static long lookup(SubscriptionRegistry registry, int documents, int lookups, long seed) {
+        Random random = new Random(seed);
+        List<Message<byte[]>> messages = new ArrayList<>();
+        for (int i = 0; i < lookups; i++) {
+            messages.add(message(SimpMessageType.MESSAGE, null, null, "/topic/document/" + random.nextInt(documents) + "/updates"));
+        }
+        long found = 0;
+        long start = System.nanoTime();
+        for (Message<byte[]> message : messages) {
+            found += registry.findSubscriptions(message).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(found > 0);
+        return elapsed / lookups;
+    }
+
+    private static MultiValueMap<String, String> find(SubscriptionRegistry registry, String destination) {
+        return registry.findSubscriptions(message(SimpMessageType.MESSAGE, null, null, destination));
+    }
+
+    private static Message<byte[]> message(SimpMessageType type, String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,102 @@
+package com.main.editco.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SharedFrameStompEncoderTest {
+    private static final int SUBSCRIBERS = 50;
+
+    @Test
+    void encodesTheSameFramesAsTheDefaultEncoder() {
+        SharedFrameStompEncoder shared = new SharedFrameStompEncoder();
+        StompEncoder plain = new StompEncoder();
+        StompDecoder decoder = new StompDecoder();
+        byte[] payload = payload(2_000);
+        for (int session = 0; session < 3; session++) {
+            Map<String, Object> headers = headers(session, "/topic/document/7/updates");
+            Message<byte[]> expected = decoder.decode(ByteBuffer.wrap(plain.encode(headers, payload))).get(0);
+            Message<byte[]> actual = decoder.decode(ByteBuffer.wrap(shared.encode(headers, payload))).get(0);
+            StompHeaderAccessor expectedHeaders = StompHeaderAccessor.wrap(expected);
+            StompHeaderAccessor actualHeaders = StompHeaderAccessor.wrap(actual);
+            assertEquals(StompCommand.MESSAGE, actualHeaders.getCommand());
+            assertEquals(expectedHeaders.toNativeHeaderMap(), actualHeaders.toNativeHeaderMap());
+            assertArrayEquals(expected.getPayload(), actual.getPayload());
+        }
+        // same payload on another destination must not reuse the cached tail
+        Message<byte[]> other = decoder.decode(ByteBuffer.wrap(shared.encode(headers(0, "/user/queue/errors"), payload))).get(0);
+        assertEquals("/user/queue/errors", StompHeaderAccessor.wrap(other).getDestination());
+    }
+
+    // Run with -Dbenchmarks=true; prints CPU and allocation for encoding one broadcast to 50 subscribers
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkBroadcast() {
+        List<Map<String, Object>> headers = new ArrayList<>();
+        for (int session = 0; session < SUBSCRIBERS; session++) {
+            headers.add(headers(session, "/topic/document/7/updates"));
+        }
+        for (int size : new int[]{512, 4_096, 65_536}) {
+            int broadcasts = 20_000_000 / size + 1_000;
+            for (int round = 0; round < 3; round++) {
+                long[] plain = run(new StompEncoder(), headers, size, broadcasts);
+                long[] shared = run(new SharedFrameStompEncoder(), headers, size, broadcasts);
+                System.out.printf("%,6d byte payload  default %,9d ns %,9d B/broadcast  shared %,9d ns %,9d B/broadcast%n",
+                        size, plain[0], plain[1], shared[0], shared[1]);
+            }
+        }
+    }
+
+    private static long[] run(StompEncoder encoder, List<Map<String, Object>> headers, int size, int broadcasts) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long sink = 0;
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < broadcasts; i++) {
+            // a fresh payload per broadcast, as the broker would deliver
+            byte[] payload = new byte[size];
+            for (Map<String, Object> subscriber : headers) {
+                sink += encoder.encode(subscriber, payload).length;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated - (long) broadcasts * (size + 16);
+        if (sink == 0) {
+            throw new IllegalStateException();
+        }
+        return new long[]{nanos / broadcasts, allocated / broadcasts};
+    }
+
+    private static Map<String, Object> headers(int session, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId("sub-" + session);
+        accessor.setMessageId("session" + session + "-" + 42);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return accessor.getMessageHeaders();
+    }
+
+    private static byte[] payload(int size) {
+        StringBuilder json = new StringBuilder("{\"changeContent\":\"");
+        while (json.length() < size) {
+            json.append("lorem ipsum ");
+        }
+        return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
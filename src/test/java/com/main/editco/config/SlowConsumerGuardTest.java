@@ -0,0 +1,109 @@
+package com.main.editco.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.editco.service.PresenceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SlowConsumerGuardTest {
+
+    @Test
+    void dropsSupersededFramesThenResyncsALaggingSession() throws Exception {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        PresenceRegistry presence = mock(PresenceRegistry.class);
+        SlowConsumerGuard guard = new SlowConsumerGuard();
+        ReflectionTestUtils.setField(guard, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(guard, "meterRegistry", meters);
+        ReflectionTestUtils.setField(guard, "presenceRegistry", presence);
+        ReflectionTestUtils.setField(guard, "sendTimeLimit", 60_000);
+        ReflectionTestUtils.setField(guard, "sendBufferLimit", 1 << 20);
+        ReflectionTestUtils.setField(guard, "lagBytes", 1_000);
+        ReflectionTestUtils.setField(guard, "lagMs", 60_000L);
+        ReflectionTestUtils.setField(guard, "resyncBytes", 4_000);
+        ReflectionTestUtils.setField(guard, "resyncMs", 60_000L);
+        guard.init();
+
+        // the configured chain: the guard intercepts the outbound channel, whose frames the STOMP
+        // handler writes through the session decorator the guard measures
+        ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        outbound.addInterceptor(guard);
+        SubProtocolWebSocketHandler handler = guard.subProtocolWebSocketHandler(inbound, outbound);
+        handler.addProtocolHandler(new StompSubProtocolHandler());
+        handler.start();
+
+        // the first write hangs on the network until released
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch network = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        WebSocketSession raw = mock(WebSocketSession.class);
+        when(raw.getId()).thenReturn("s1");
+        when(raw.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            written.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            writing.countDown();
+            network.await();
+            return null;
+        }).when(raw).sendMessage(any());
+        handler.afterConnectionEstablished(raw);
+
+        Thread writer = new Thread(() -> outbound.send(message("/topic/document/7/updates", "u", 10)));
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        assertTrue(outbound.send(message("/topic/document/7/updates", "u", 2_000)));
+
+        // lagging: cursors and presence diffs go, edits still flow
+        assertFalse(outbound.send(message("/topic/document/7/cursors", "c", 10)));
+        assertFalse(outbound.send(message("/topic/document/7/presence", "p", 10)));
+        assertTrue(outbound.send(message("/topic/document/7/updates", "u", 3_000)));
+
+        // far behind: one resync marker, then edits are dropped
+        assertTrue(outbound.send(message("/topic/document/7/updates", "u", 10)));
+        assertFalse(outbound.send(message("/topic/document/7/updates", "u", 10)));
+        assertEquals(1.0, meters.counter("coedit.ws.outbound.resyncs").count());
+
+        // drained: edits flow again and the missed presence diffs are replaced by a snapshot
+        network.countDown();
+        writer.join(5_000);
+        assertTrue(outbound.send(message("/topic/document/7/updates", "u", 10)));
+        verify(presence).resendSnapshot(7L, "s1", "p");
+        assertEquals(1.0, meters.counter("coedit.ws.outbound.dropped", "channel", "updates").count());
+        assertEquals(1.0, meters.counter("coedit.ws.outbound.dropped", "channel", "cursors").count());
+
+        assertEquals(5, written.size());
+        assertEquals(1, written.stream().filter(frame -> frame.contains("\"operation\":\"resync\"")).count());
+        assertTrue(written.stream().noneMatch(frame -> frame.contains("/cursors") || frame.contains("/presence")));
+    }
+
+    private static Message<byte[]> message(String destination, String subscriptionId, int size) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId("s1");
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(destination);
+        return MessageBuilder.createMessage("x".repeat(size).getBytes(), headers.getMessageHeaders());
+    }
+}
@@ -0,0 +1,100 @@
+package com.main.editco.service;
+
+import com.main.editco.dao.entities.AccessType;
+import com.main.editco.dao.repositories.DocumentRepository;
+import com.main.editco.dao.repositories.PermissionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AccessControlIndexTest {
+
+    @Test
+    void loadsOwnersAndGrantsFromTheDatabase() {
+        AccessControlIndex index = index(List.<Object[]>of(new Object[]{1L, 10L}),
+                List.<Object[]>of(new Object[]{1L, 20L, AccessType.VIEWER}));
+        assertTrue(index.isOwner(10L, 1L));
+        assertTrue(index.canView(20L, 1L));
+        assertFalse(index.canEdit(20L, 1L));
+    }
+
+    @Test
+    void createdDocumentsAreOnlyOpenToTheirOwner() {
+        AccessControlIndex index = index(List.of(), List.of());
+        assertFalse(index.canView(10L, 1L));
+        index.documentCreated(1L, 10L);
+        assertTrue(index.isOwner(10L, 1L));
+        assertTrue(index.canEdit(10L, 1L));
+        assertFalse(index.canView(20L, 1L));
+    }
+
+    @Test
+    void grantsAndRevocationsChangeWhatAUserMayDo() {
+        AccessControlIndex index = index(List.of(), List.of());
+        index.documentCreated(1L, 10L);
+        index.granted(1L, 20L, AccessType.VIEWER);
+        assertTrue(index.canView(20L, 1L));
+        assertFalse(index.canEdit(20L, 1L));
+        index.granted(1L, 20L, AccessType.EDITOR);
+        assertTrue(index.canEdit(20L, 1L));
+        assertFalse(index.isOwner(20L, 1L));
+        index.revoked(1L, 20L);
+        assertFalse(index.canView(20L, 1L));
+        assertTrue(index.canView(10L, 1L));
+    }
+
+    @Test
+    void deletedDocumentsAreClosedToEveryone() {
+        AccessControlIndex index = index(List.of(), List.of());
+        index.documentCreated(1L, 10L);
+        index.granted(1L, 20L, AccessType.EDITOR);
+        index.documentDeleted(1L);
+        assertFalse(index.canView(10L, 1L));
+        assertFalse(index.canView(20L, 1L));
+        // a grant arriving after the delete does not bring the document back
+        index.granted(1L, 20L, AccessType.EDITOR);
+        assertFalse(index.canView(20L, 1L));
+    }
+
+    @Test
+    void changesOnlyApplyOnceTheirTransactionCommits() {
+        AccessControlIndex index = index(List.of(), List.of());
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.documentCreated(1L, 10L);
+            assertFalse(index.canView(10L, 1L));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertTrue(index.canView(10L, 1L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // rolled back: the synchronization is dropped without afterCommit
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.documentDeleted(1L);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(index.canView(10L, 1L));
+    }
+
+    private static AccessControlIndex index(List<Object[]> ownerships, List<Object[]> grants) {
+        AccessControlIndex index = new AccessControlIndex();
+        index.documentRepository = mock(DocumentRepository.class);
+        index.permissionRepository = mock(PermissionRepository.class);
+        index.meterRegistry = new SimpleMeterRegistry();
+        when(index.documentRepository.findAllOwnerships()).thenReturn(ownerships);
+        when(index.permissionRepository.findAllGrants()).thenReturn(grants);
+        index.load();
+        return index;
+    }
+}
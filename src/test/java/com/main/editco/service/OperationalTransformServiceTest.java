@@ -0,0 +1,138 @@
+package com.main.editco.service;
+
+import com.main.editco.dto.DocumentEditMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationalTransformServiceTest {
+
+    @Test
+    void concurrentInsertsAtOneSpotAreOrderedByWhoWasAppliedFirst() {
+        assertConverges("abc", op(1, 0, "X"), op(1, 0, "Y"), "aXYbc");
+        assertConverges("abc", op(3, 0, "X"), op(3, 0, "Y"), "abcXY");
+    }
+
+    @Test
+    void overlappingDeletesRemoveTheUnionOnce() {
+        assertConverges("abcdef", op(1, 3, ""), op(2, 3, ""), "af");
+        assertConverges("abcdef", op(1, 2, ""), op(1, 2, ""), "adef");
+        assertConverges("abcdef", op(0, 2, ""), op(2, 2, ""), "ef");
+    }
+
+    @Test
+    void textInsertedIntoARangeDeletedConcurrentlySurvives() {
+        // the case that used to end as "af" one way round and "aXYf" the other
+        assertConverges("abcdef", op(2, 1, "XY"), op(1, 4, ""), "aXYf");
+        assertConverges("abcdef", op(1, 4, ""), op(2, 1, "XY"), "aXYf");
+        assertConverges("abcdef", op(3, 0, "Z"), op(1, 4, ""), "aZf");
+        assertConverges("abcdef", op(1, 4, "Q"), op(3, 0, "Z"), "aQZf");
+        assertConverges("abcdef", op(1, 3, "P"), op(2, 3, "Q"), "aPQf");
+    }
+
+    @Test
+    void randomConcurrentPairsConverge() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            String text = "abcdefghij".substring(0, random.nextInt(11));
+            DocumentEditMessage a = randomOp(random, text.length());
+            DocumentEditMessage b = randomOp(random, text.length());
+            String bFirst = apply(apply(text, b), OperationalTransformService.transform(a, b, false));
+            String aFirst = apply(apply(text, a), OperationalTransformService.transform(b, a, true));
+            assertEquals(bFirst, aFirst, "a=" + a + " b=" + b + " on " + text);
+        }
+    }
+
+    @Test
+    void editsAreTransformedAgainstOtherSessionsSinceTheirBase() {
+        OperationalTransformService service = service(10);
+        service.seed(1L, 0);
+        String text = "hello";
+        DocumentEditMessage first = service.apply(1L, edit(op(5, 0, "!"), "s1", 0));
+        text = apply(text, first);
+        DocumentEditMessage second = service.apply(1L, edit(op(0, 1, "J"), "s2", 0));
+        text = apply(text, second);
+        // s1 saw its own edit locally, so its second edit based on revision 0 is only moved past s2's
+        DocumentEditMessage third = service.apply(1L, edit(op(6, 0, "?"), "s1", 0));
+        text = apply(text, third);
+        assertEquals("Jello!?", text);
+        assertEquals(3L, third.getRevision());
+        assertEquals(2L, third.getBaseRevision());
+    }
+
+    @Test
+    void rejectsMissingUnknownAndForgottenBaseRevisions() {
+        OperationalTransformService service = service(2);
+        service.seed(1L, 0);
+        for (int i = 0; i < 4; i++) {
+            service.apply(1L, edit(op(0, 0, "x"), "s", i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> service.apply(1L, op(0, 0, "y")));
+        assertThrows(IllegalArgumentException.class, () -> service.apply(1L, edit(op(0, 0, "y"), "t", 5)));
+        assertThrows(IllegalStateException.class, () -> service.apply(1L, edit(op(0, 0, "y"), "t", 1)));
+        assertThrows(IllegalArgumentException.class, () -> service.apply(1L, edit(op(9, 0, "y"), "t", 4), 4));
+        assertEquals(4L, service.getRevision(1L));
+    }
+
+    @Test
+    void catchUpReturnsTheMissedOperationsWhileTheLogStillHoldsThem() {
+        OperationalTransformService service = service(10);
+        service.seed(1L, 100);
+        for (int i = 0; i < 15; i++) {
+            service.apply(1L, edit(op(0, 0, String.valueOf(i)), "s", 100 + i));
+        }
+
+        List<DocumentEditMessage> missed = service.since(1L, 110).orElseThrow();
+        assertEquals(List.of(111L, 112L, 113L, 114L, 115L), missed.stream().map(DocumentEditMessage::getRevision).toList());
+        assertEquals("10", missed.get(0).getChangeContent());
+        assertTrue(service.since(1L, 115).orElseThrow().isEmpty());
+        assertEquals(10, service.since(1L, 105).orElseThrow().size());
+        // older than the log, ahead of the document, or no log at all: the caller sends a snapshot
+        assertTrue(service.since(1L, 104).isEmpty());
+        assertTrue(service.since(1L, 116).isEmpty());
+        assertTrue(service.since(2L, 0).isEmpty());
+    }
+
+    private static void assertConverges(String text, DocumentEditMessage a, DocumentEditMessage b, String expected) {
+        assertEquals(expected, apply(apply(text, a), OperationalTransformService.transform(b, a)), "a then b");
+        assertEquals(expected, apply(apply(text, b), OperationalTransformService.transform(a, b, true)), "b then a");
+    }
+
+    private static OperationalTransformService service(int maxLogSize) {
+        OperationalTransformService service = new OperationalTransformService();
+        ReflectionTestUtils.setField(service, "maxLogSize", maxLogSize);
+        return service;
+    }
+
+    private static DocumentEditMessage randomOp(Random random, int length) {
+        int position = random.nextInt(length + 1);
+        int removed = random.nextInt(length - position + 1);
+        return op(position, removed, "XYZ".substring(0, random.nextInt(4)));
+    }
+
+    private static DocumentEditMessage op(int position, int removed, String inserted) {
+        DocumentEditMessage operation = new DocumentEditMessage();
+        operation.setOperation(OperationalTransformService.REPLACE);
+        operation.setCursorPosition(position);
+        operation.setLength(removed);
+        operation.setChangeContent(inserted);
+        return operation;
+    }
+
+    private static DocumentEditMessage edit(DocumentEditMessage operation, String sessionId, long baseRevision) {
+        operation.setSessionId(sessionId);
+        operation.setBaseRevision(baseRevision);
+        return operation;
+    }
+
+    private static String apply(String text, DocumentEditMessage operation) {
+        int position = operation.getCursorPosition();
+        return text.substring(0, position) + operation.getChangeContent() + text.substring(position + operation.getLength());
+    }
+}
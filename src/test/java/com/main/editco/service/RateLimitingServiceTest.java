@@ -0,0 +1,107 @@
+package com.main.editco.service;
+
+import com.main.editco.config.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitingServiceTest {
+
+    @Test
+    void limitsEachKeyOfEachPolicySeparately() {
+        RateLimitingService service = service(1_000);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(service.allowRequest(RateLimitingService.LOGIN_ACCOUNT, "a@x.com", "10.0.0." + i));
+        }
+        // the account policy is keyed by user only, so changing address does not help
+        assertFalse(service.allowRequest(RateLimitingService.LOGIN_ACCOUNT, "a@x.com", "10.0.0.9"));
+        assertTrue(service.allowRequest(RateLimitingService.LOGIN_ACCOUNT, "b@x.com", "10.0.0.1"));
+        // the address policy is keyed by address only, so changing account does not help either
+        for (int i = 0; i < 20; i++) {
+            assertTrue(service.allowRequest(RateLimitingService.LOGIN, null, "10.0.0.1"));
+        }
+        assertFalse(service.allowRequest(RateLimitingService.LOGIN, null, "10.0.0.1"));
+        assertTrue(service.allowRequest(RateLimitingService.LOGIN, null, "10.0.0.2"));
+        assertTrue(service.allowRequest(RateLimitingService.REGISTRATION, null, "10.0.0.1"));
+
+        RateLimitExceededException rejected = assertThrows(RateLimitExceededException.class,
+                () -> service.check(RateLimitingService.LOGIN_ACCOUNT, "a@x.com", "10.0.0.1"));
+        assertEquals(RateLimitingService.LOGIN_ACCOUNT, rejected.getPolicy());
+        assertTrue(rejected.getRetryAfter().compareTo(Duration.ZERO) > 0);
+
+        service.resetLimits(RateLimitingService.LOGIN_ACCOUNT, "a@x.com", "10.0.0.1");
+        assertEquals(5, service.getRemainingTokens(RateLimitingService.LOGIN_ACCOUNT, "a@x.com", "10.0.0.1"));
+    }
+
+    @Test
+    void bucketStoreStaysBoundedUnderAMillionDistinctKeys() {
+        int maxKeys = 10_000;
+        RateLimitingService service = service(maxKeys);
+        spray(service, 0, 100_000);
+        assertTrue(service.trackedKeys(RateLimitingService.REST_WRITE) <= maxKeys);
+        spray(service, 100_000, 1_000_000);
+        assertTrue(service.trackedKeys(RateLimitingService.REST_WRITE) <= maxKeys);
+    }
+
+    // Run with -Dbenchmarks=true; prints the retained heap per tracked key and checks that keys past
+    // maxKeys do not grow the heap beyond GC noise
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkMemoryPerKey() {
+        int keys = 200_000;
+        RateLimitingService service = service(keys);
+        long before = usedHeap(service);
+        spray(service, 0, keys);
+        long full = usedHeap(service);
+        spray(service, keys, 1_000_000);
+        long sprayed = usedHeap(service);
+        System.out.printf("%,d keys: ~%d bytes per key; %,d bytes at %,d keys, %,d bytes after 1M keys%n",
+                keys, (full - before) / keys, full, keys, sprayed);
+        assertTrue(sprayed - full < 16L * 1024 * 1024, "heap grew by " + (sprayed - full) + " bytes");
+    }
+
+    private static void spray(RateLimitingService service, int fromKey, int toKey) {
+        for (int i = fromKey; i < toKey; i++) {
+            service.allowRequest(RateLimitingService.REST_WRITE, "user-" + i, "10.0.0.1");
+        }
+    }
+
+    private static long usedHeap(RateLimitingService service) {
+        service.trackedKeys(RateLimitingService.REST_WRITE);
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static RateLimitingService service(long maxKeys) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setMaxKeys(maxKeys);
+        properties.getPolicies().put(RateLimitingService.LOGIN, policy(20, RateLimitProperties.KeyType.IP));
+        properties.getPolicies().put(RateLimitingService.LOGIN_ACCOUNT, policy(5, RateLimitProperties.KeyType.USER));
+        properties.getPolicies().put(RateLimitingService.REGISTRATION, policy(10, RateLimitProperties.KeyType.IP));
+        properties.getPolicies().put(RateLimitingService.REST_WRITE, policy(120, RateLimitProperties.KeyType.USER));
+        properties.getPolicies().put(RateLimitingService.WEBSOCKET_MESSAGE, policy(200, RateLimitProperties.KeyType.USER));
+        RateLimitingService service = new RateLimitingService();
+        service.properties = properties;
+        service.meterRegistry = new SimpleMeterRegistry();
+        service.init();
+        return service;
+    }
+
+    private static RateLimitProperties.Policy policy(long capacity, RateLimitProperties.KeyType key) {
+        RateLimitProperties.Policy policy = new RateLimitProperties.Policy();
+        policy.setCapacity(capacity);
+        policy.setPeriod(Duration.ofMinutes(1));
+        policy.setKey(key);
+        return policy;
+    }
+}
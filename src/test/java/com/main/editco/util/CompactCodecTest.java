@@ -0,0 +1,134 @@
+package com.main.editco.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.main.editco.dto.CursorBatchMessage;
+import com.main.editco.dto.CursorPositionMessage;
+import com.main.editco.dto.DocumentEditMessage;
+import com.main.editco.dto.UserPresenceMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactCodecTest {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Test
+    void roundTripsThroughInternedReferences() throws Exception {
+        CompactCodec encoder = new CompactCodec(1024);
+        CompactCodec decoder = new CompactCodec(1024);
+        List<JsonNode> messages = messages(50);
+        List<byte[]> frames = new ArrayList<>();
+        for (JsonNode message : messages) {
+            frames.add(encoder.encode(message));
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(messages.get(i), decoder.decode(frames.get(i)));
+        }
+        // the first frame of a session defines its strings, a repeat from the same user only carries references
+        assertTrue(frames.get(45).length < frames.get(0).length);
+    }
+
+    @Test
+    void sendsStringsInlineOnceTheTableIsFull() throws Exception {
+        CompactCodec encoder = new CompactCodec(2);
+        CompactCodec decoder = new CompactCodec(2);
+        for (JsonNode message : messages(10)) {
+            assertEquals(message, decoder.decode(encoder.encode(message)));
+        }
+    }
+
+    @Test
+    void takesBackTheIdsOfAFrameThatFailedToEncode() throws Exception {
+        CompactCodec encoder = new CompactCodec(1024);
+        CompactCodec decoder = new CompactCodec(1024);
+        ObjectNode broken = JSON.createObjectNode().put("sessionId", "session-1");
+        // no serializer for a bare Object, so writing fails after sessionId got its id
+        broken.putPOJO("payload", new Object());
+        assertThrows(IOException.class, () -> encoder.encode(broken));
+
+        // the decoder never saw the failed frame, so the next one has to define session-1 again
+        JsonNode message = JSON.createObjectNode().put("sessionId", "session-1").put("email", "a@example.com");
+        assertEquals(message, decoder.decode(encoder.encode(message)));
+    }
+
+    // Run with -Dbenchmarks=true; prints bytes and encode/decode cost per message against Jackson JSON
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkAgainstJson() throws Exception {
+        List<JsonNode> messages = messages(10_000);
+        for (int round = 0; round < 3; round++) {
+            long jsonBytes = 0;
+            long compactBytes = 0;
+            long start = System.nanoTime();
+            List<byte[]> json = new ArrayList<>();
+            for (JsonNode message : messages) {
+                byte[] frame = JSON.writeValueAsBytes(message);
+                jsonBytes += frame.length;
+                json.add(frame);
+            }
+            long jsonEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (byte[] frame : json) {
+                JSON.readTree(frame);
+            }
+            long jsonDecode = System.nanoTime() - start;
+
+            CompactCodec encoder = new CompactCodec(1024);
+            start = System.nanoTime();
+            List<byte[]> compact = new ArrayList<>();
+            for (JsonNode message : messages) {
+                byte[] frame = encoder.encode(message);
+                compactBytes += frame.length;
+                compact.add(frame);
+            }
+            long compactEncode = System.nanoTime() - start;
+            CompactCodec decoder = new CompactCodec(1024);
+            start = System.nanoTime();
+            for (byte[] frame : compact) {
+                decoder.decode(frame);
+            }
+            long compactDecode = System.nanoTime() - start;
+
+            int n = messages.size();
+            System.out.printf("JSON    %5d bytes/msg  encode %,6d ns/msg  decode %,6d ns/msg%n",
+                    jsonBytes / n, jsonEncode / n, jsonDecode / n);
+            System.out.printf("compact %5d bytes/msg  encode %,6d ns/msg  decode %,6d ns/msg%n",
+                    compactBytes / n, compactEncode / n, compactDecode / n);
+        }
+    }
+
+    // A mix of edits, cursor batches and presence diffs from a handful of collaborators
+    private static List<JsonNode> messages(int count) throws IOException {
+        List<JsonNode> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int user = i % 5;
+            String sessionId = "3f2c9a71-8d4e-4b6a-9c1f-0e5d7b2a" + (1000 + user);
+            Object message = switch (i % 3) {
+                case 0 -> new DocumentEditMessage(42L, "user" + user + "@example.com", "User Number " + user,
+                        "insert", i, "x", null, sessionId, 1_700_000_000_000L + i, (long) i, (long) i + 1, null);
+                case 1 -> new CursorBatchMessage(42L, List.of(
+                        cursor(user, sessionId, i), cursor((user + 1) % 5, "other-session-" + user, i + 7)),
+                        1_700_000_000_000L + i);
+                default -> new UserPresenceMessage(42L, String.valueOf(user), "User Number " + user,
+                        "join", null, 1_700_000_000_000L + i);
+            };
+            // through bytes, so small numbers come back as ints the way a decoded frame has them
+            messages.add(JSON.readTree(JSON.writeValueAsBytes(message)));
+        }
+        return messages;
+    }
+
+    private static CursorPositionMessage cursor(int user, String sessionId, int position) {
+        return new CursorPositionMessage(42L, String.valueOf(user), "User Number " + user, "#22d3ee",
+                position, null, null, sessionId, 1_700_000_000_000L + position);
+    }
+}
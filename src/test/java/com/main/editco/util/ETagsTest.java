@@ -0,0 +1,29 @@
+package com.main.editco.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ETagsTest {
+
+    @Test
+    void comparesWeaklyForIfNoneMatchAndStronglyForIfMatch() {
+        String etag = ETags.of(3, 41);
+        assertEquals("\"3.41\"", etag);
+
+        assertTrue(ETags.noneMatchFails("\"3.40\", \"3.41\"", etag));
+        assertTrue(ETags.noneMatchFails("W/\"3.41\"", etag));
+        assertTrue(ETags.noneMatchFails("*", etag));
+        assertFalse(ETags.noneMatchFails("\"3.40\"", etag));
+        assertFalse(ETags.noneMatchFails(null, etag));
+
+        // no header means no precondition, a weak tag never satisfies one
+        assertTrue(ETags.matchHolds(null, etag));
+        assertTrue(ETags.matchHolds("\"3.41\"", etag));
+        assertTrue(ETags.matchHolds("*", etag));
+        assertFalse(ETags.matchHolds("W/\"3.41\"", etag));
+        assertFalse(ETags.matchHolds("\"2.41\"", etag));
+    }
+}
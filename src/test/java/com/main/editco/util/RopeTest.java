@@ -0,0 +1,114 @@
+package com.main.editco.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RopeTest {
+
+    @Test
+    void matchesStringBuilderUnderRandomEdits() {
+        Random random = new Random(42);
+        String initial = randomText(random, 5_000);
+        Rope rope = new Rope(initial);
+        StringBuilder expected = new StringBuilder(initial);
+
+        for (int i = 0; i < 20_000; i++) {
+            int position = random.nextInt(expected.length() + 1);
+            int removed = random.nextInt(4) == 0 ? Math.min(random.nextInt(50), expected.length() - position) : 0;
+            String inserted = random.nextBoolean() ? randomText(random, 1 + random.nextInt(40)) : "";
+            rope.replace(position, removed, inserted);
+            expected.replace(position, position + removed, inserted);
+            if (i % 1_000 == 0) {
+                int start = random.nextInt(expected.length() + 1);
+                int end = start + random.nextInt(expected.length() - start + 1);
+                assertEquals(expected.substring(start, end), rope.substring(start, end));
+            }
+        }
+
+        assertEquals(expected.length(), rope.length());
+        assertEquals(expected.toString(), rope.toString());
+        assertEquals(expected.charAt(expected.length() / 2), rope.charAt(rope.length() / 2));
+        // AVL balancing keeps the height below 1.45 * log2(leaves), and there are never more leaves than chars
+        assertTrue(rope.height() <= 2 * (32 - Integer.numberOfLeadingZeros(rope.length())),
+                "rope height " + rope.height() + " is not logarithmic");
+    }
+
+    // Run with -Dbenchmarks=true; prints mean cost per random-position edit for each buffer type
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkRandomPositionEdits() {
+        int[] sizes = {1_024, 100 * 1_024, 10 * 1_024 * 1_024};
+        int[] edits = {50_000, 20_000, 500};
+        String warmup = randomText(new Random(-1), 100 * 1_024);
+        runString(warmup, 20_000);
+        runStringBuilder(warmup, 20_000);
+        runRope(warmup, 20_000);
+        for (int s = 0; s < sizes.length; s++) {
+            String initial = randomText(new Random(s), sizes[s]);
+            long stringNanos = runString(initial, edits[s]);
+            long builderNanos = runStringBuilder(initial, edits[s]);
+            long ropeNanos = runRope(initial, edits[s]);
+            System.out.printf("%,12d chars  String %,10d ns/op  StringBuilder %,10d ns/op  Rope %,10d ns/op%n",
+                    sizes[s], stringNanos / edits[s], builderNanos / edits[s], ropeNanos / edits[s]);
+        }
+    }
+
+    private static long runString(String initial, int edits) {
+        Random random = new Random(7);
+        String text = initial;
+        long start = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            int position = random.nextInt(text.length() + 1);
+            if (i % 2 == 0 || text.isEmpty()) {
+                text = text.substring(0, position) + "x" + text.substring(position);
+            } else {
+                int end = Math.min(text.length(), position + 1);
+                text = text.substring(0, position) + text.substring(end);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runStringBuilder(String initial, int edits) {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder(initial);
+        long start = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            int position = random.nextInt(text.length() + 1);
+            if (i % 2 == 0 || text.isEmpty()) {
+                text.insert(position, "x");
+            } else {
+                text.delete(position, Math.min(text.length(), position + 1));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runRope(String initial, int edits) {
+        Random random = new Random(7);
+        Rope text = new Rope(initial);
+        long start = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            int position = random.nextInt(text.length() + 1);
+            if (i % 2 == 0 || text.isEmpty()) {
+                text.insert(position, "x");
+            } else {
+                text.delete(position, Math.min(text.length(), position + 1) - position);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}